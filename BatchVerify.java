@@ -0,0 +1,286 @@
+package MerkleTreeVerify;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class verifies many blocks at once. Blocks are 
+ * pulled from an iterator of block sources and go through
+ * two stages of worker threads: fetch workers get and 
+ * parse the block while hash workers build the Merkle Tree
+ * and compare the roots. The stages are joined by bounded
+ * queues, so fetching the next blocks overlaps with hashing
+ * the last ones, and a slow consumer holds back both stages
+ * instead of letting blocks pile up in memory.
+ * 
+ * A Result is handed to the consumer for every block in 
+ * the order the blocks finish, not the order they were
+ * pulled in, use getSequence() to line them up.
+ */
+public class BatchVerify {
+	private final int fetchWorkers;     // the number of threads fetching blocks
+	private final int hashWorkers;      // the number of threads hashing blocks
+	private final int queueCapacity;    // the most blocks waiting between two stages
+	private long nextSequence;          // the sequence of the next source pulled, guarded by the sources iterator
+	
+	
+	//----------------Constructors-------------------------------------------//
+	/**
+	 * Constructs a BatchVerify object.
+	 * 
+	 * @param fetchWorkers the number of threads fetching blocks
+	 * @param hashWorkers the number of threads hashing blocks
+	 * @param queueCapacity the most blocks allowed to wait 
+	 * between two stages
+	 */
+	public BatchVerify(int fetchWorkers, int hashWorkers, int queueCapacity) {
+		if (fetchWorkers < 1 || hashWorkers < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("worker counts and queue capacity must be at least one");
+		}
+		this.fetchWorkers = fetchWorkers;
+		this.hashWorkers = hashWorkers;
+		this.queueCapacity = queueCapacity;
+	}
+	//----------------End Constructors---------------------------------------//
+	
+	//----------------Public Methods-----------------------------------------//
+	
+	/**
+	 * Verifies every block from sources, handing each 
+	 * result to sink on the calling thread. Returns when
+	 * every block is done. If sink throws, the workers are
+	 * stopped and the exception is passed on.
+	 * 
+	 * @param sources the blocks to verify, each call 
+	 * fetches one block
+	 * @param sink receives the result of every block
+	 * @throws InterruptedException if the calling thread
+	 * is interrupted while waiting for results
+	 */
+	public void run(Iterator<? extends Callable<? extends BlockSource>> sources, Sink sink) throws InterruptedException {
+		final BlockingQueue<Fetched> fetched = new ArrayBlockingQueue<Fetched>(queueCapacity);
+		final BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(queueCapacity);
+		final AtomicInteger fetchersLeft = new AtomicInteger(fetchWorkers);
+		final AtomicInteger hashersLeft = new AtomicInteger(hashWorkers);
+		nextSequence = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(fetchWorkers + hashWorkers);
+		
+		try {
+			for (int i = 0; i < fetchWorkers; ++i) {
+				pool.execute(new FetchWorker(sources, fetched, fetchersLeft));
+			}
+			for (int i = 0; i < hashWorkers; ++i) {
+				pool.execute(new HashWorker(fetched, results, hashersLeft));
+			}
+			
+			// hand results over until every hash worker has finished
+			Result result;
+			while ((result = results.take()) != Result.DONE) {
+				sink.accept(result);
+			}
+		} finally {
+			pool.shutdownNow();                           // stops the workers early if the sink failed
+		}
+	}
+	
+	//---------------Nested Classes----------------------------------//
+	
+	/**
+	 * Receives the result of each block.
+	 */
+	public interface Sink {
+		void accept(Result result);
+	}
+	
+	/**
+	 * This class holds the outcome of verifying one block.
+	 */
+	public static class Result {
+		static final Result DONE = new Result(-1, null, 0, 0, null);   // marks the end of the results
+		
+		private final long sequence;         // the position of the block in the sources
+		private final VerificationResult verification;  // the outcome of verifying the block
+		private final long fetchNanos;       // the time spent fetching the block
+		private final long hashNanos;        // the time spent hashing the block
+		private final Throwable error;       // the exception behind a failure, null if there was none
+		
+		Result(long sequence, VerificationResult verification, long fetchNanos, long hashNanos, Throwable error) {
+			this.sequence = sequence;
+			this.verification = verification;
+			this.fetchNanos = fetchNanos;
+			this.hashNanos = hashNanos;
+			this.error = error;
+		}
+		
+		/** @return the position of the block in the sources, starting at zero */
+		public long getSequence() { return sequence; }
+		
+		/** @return the outcome of verifying the block */
+		public VerificationResult getVerification() { return verification; }
+		
+		/** @return the status of the block */
+		public VerificationResult.Status getStatus() { return verification.status(); }
+		
+		/** @return the block number, or -1 if the block could not be fetched */
+		public int getBlockNumber() { return verification.blockNumber(); }
+		
+		/** @return the merkle root computed from the transactions */
+		public String getComputedRoot() { return verification.computedRoot(); }
+		
+		/** @return the merkle root given by the block */
+		public String getExpectedRoot() { return verification.expectedRoot(); }
+		
+		/** @return true if the two roots are equal */
+		public boolean isMatch() { return verification.isMatch(); }
+		
+		/** @return the nanoseconds spent fetching the block */
+		public long getFetchNanos() { return fetchNanos; }
+		
+		/** @return the nanoseconds spent hashing the block */
+		public long getHashNanos() { return hashNanos; }
+		
+		/** @return the exception behind a failure, or null if there was none */
+		public Throwable getError() { return error; }
+	}
+	
+	/**
+	 * A fetched block on its way to the hash workers.
+	 */
+	private static class Fetched {
+		static final Fetched DONE = new Fetched(-1, null, 0, null);   // tells a hash worker to stop
+		
+		final long sequence;
+		final BlockSource block;
+		final long fetchNanos;
+		final Throwable error;
+		
+		Fetched(long sequence, BlockSource block, long fetchNanos, Throwable error) {
+			this.sequence = sequence;
+			this.block = block;
+			this.fetchNanos = fetchNanos;
+			this.error = error;
+		}
+	}
+	
+	/**
+	 * Pulls sources off the shared iterator and fetches
+	 * them until the iterator runs dry or fails. The last
+	 * fetch worker to finish tells every hash worker to 
+	 * stop, however it finished.
+	 */
+	private class FetchWorker implements Runnable {
+		private final Iterator<? extends Callable<? extends BlockSource>> sources;
+		private final BlockingQueue<Fetched> fetched;
+		private final AtomicInteger fetchersLeft;
+		
+		FetchWorker(Iterator<? extends Callable<? extends BlockSource>> sources, BlockingQueue<Fetched> fetched, AtomicInteger fetchersLeft) {
+			this.sources = sources;
+			this.fetched = fetched;
+			this.fetchersLeft = fetchersLeft;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Callable<? extends BlockSource> source;
+					long sequence;
+					synchronized (sources) {                   // the iterator is shared by every fetch worker
+						try {
+							if (!sources.hasNext()) {
+								break;
+							}
+							source = sources.next();
+						} catch (RuntimeException e) {         // the sources themselves failed, report it and stop
+							fetched.put(new Fetched(nextSequence++, null, 0, e));
+							break;
+						}
+						sequence = nextSequence++;
+					}
+					
+					long start = System.nanoTime();
+					BlockSource block = null;
+					Throwable error = null;
+					try {
+						block = source.call();
+					} catch (Exception | Error e) {            // even an Error only fails this block
+						error = e;
+					}
+					fetched.put(new Fetched(sequence, block, System.nanoTime() - start, error));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();            // the batch was stopped
+			} finally {
+				if (fetchersLeft.decrementAndGet() == 0) {
+					try {
+						for (int i = 0; i < hashWorkers; ++i) {
+							fetched.put(Fetched.DONE);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();    // the batch was stopped
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Verifies fetched blocks until told to stop. The
+	 * last hash worker to finish ends the results, 
+	 * however it finished.
+	 */
+	private static class HashWorker implements Runnable {
+		private final BlockingQueue<Fetched> fetched;
+		private final BlockingQueue<Result> results;
+		private final AtomicInteger hashersLeft;
+		private final MerkleTreeBuilder builder = new MerkleTreeBuilder();   // reused for every block this worker hashes
+		
+		HashWorker(BlockingQueue<Fetched> fetched, BlockingQueue<Result> results, AtomicInteger hashersLeft) {
+			this.fetched = fetched;
+			this.results = results;
+			this.hashersLeft = hashersLeft;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				Fetched f;
+				while ((f = fetched.take()) != Fetched.DONE) {
+					results.put(verify(f));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();            // the batch was stopped
+			} finally {
+				if (hashersLeft.decrementAndGet() == 0) {
+					try {
+						results.put(Result.DONE);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();    // the batch was stopped
+					}
+				}
+			}
+		}
+		
+		private Result verify(Fetched f) {
+			if (f.error != null || f.block == null) {
+				Throwable error = (f.error != null) ? f.error : new IllegalStateException("no block was fetched");
+				return new Result(f.sequence, VerificationResult.fetchFailed(error), f.fetchNanos, 0, error);
+			}
+			
+			long start = System.nanoTime();
+			try {
+				VerificationResult verification = BlockVerify.verify(f.block, builder);
+				return new Result(f.sequence, verification, f.fetchNanos, System.nanoTime() - start, f.block.getFetchError());
+			} catch (RuntimeException e) {                      // bad block data, report it and carry on
+				VerificationResult malformed = new VerificationResult(VerificationResult.Status.MALFORMED_INPUT,
+				                                                      -1, null, null, null, String.valueOf(e));
+				return new Result(f.sequence, malformed, f.fetchNanos, System.nanoTime() - start, e);
+			}
+		}
+	}
+}
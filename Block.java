@@ -1,6 +1,7 @@
 package MerkleTreeVerify;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -26,10 +27,15 @@ import java.net.URLConnection;
  * Merkle Tree
  *
  */
-public class Block {
+public class Block implements BlockSource {
 	private URL blockURL;                 // a variable to hold a URL address to the desired block
 	private String merkleRoot = "";       // a variable to hold the merkle root from the desired block
-	private String[] transactionIDs;      // a string array to hold all of the transaction IDs from the desired block
+	private byte[] transactionHashes;     // the transaction IDs from the desired block packed 32 bytes apiece in LITTLE-ENDIAN order
+	private int transactionCount;         // the number of transaction IDs in transactionHashes
+	private int declaredCount = -1;       // the number of transactions the page says there are
+	private int malformedCount;           // the number of transaction IDs skipped for not being 64 hex digits
+	private IOException fetchError;       // why the page could not be read, null if it was
+	private String[] transactionIDs;      // a string array made from transactionHashes when first asked for
 	private int blockNum;                 // a variable to hold the current block number
 	private static final String homePage = "https://blockchain.info/";  // a static string that holds the URL of the front page of the blockchain.info site
 	
@@ -43,118 +49,123 @@ public class Block {
 	 */
 	public Block(URL url) throws MalformedURLException {
 		blockURL = url;
-		transactionIDs = fetchTransactions(url);   // get the transaction IDs from the site
+		fetchTransactions(url);                    // get the transaction IDs from the site
 	}
 	
 	/**
 	 * This constructor constructs a Block object when
 	 * you want to verify the most recent block from the 
-	 * home page  https://blockchain.info/
+	 * home page  https://blockchain.info/ If the home page
+	 * can't be read the block keeps the failure as its
+	 * fetch error, like a block page that can't be read.
 	 */
 	public Block() throws MalformedURLException {
-		this(fetchMostRecent(homePage));          // get the URL of the most recent block from the site
+		blockURL = new URL(homePage);
+		try {
+			blockURL = fetchMostRecent(homePage);     // get the URL of the most recent block from the site
+		} catch (IOException e) {
+			fetchError = e;                           // kept for BlockVerify.verify to report
+			Metrics.count(Metrics.Counter.FETCH_FAILURES);
+			return;
+		}
+		fetchTransactions(blockURL);              // get the transaction IDs from the site
+	}
+	
+	/**
+	 * This constructor constructs a Block object from a
+	 * block page that has already been fetched, for example
+	 * by a BlockFetcher.
+	 * 
+	 * @param url the URL the page came from
+	 * @param page the block page, read until the end
+	 * but not closed
+	 * @throws IOException if reading the page fails
+	 */
+	public Block(URL url, InputStream page) throws IOException {
+		blockURL = url;
+		parse(page);
 	}
 
 	//----------------End Constructor-----------------------------//
 	
 	/**
-	 * This method gets the transaction IDs from the 
-	 * desired block.
+	 * This method gets the block number, merkle root and
+	 * transaction IDs from the desired block. The page is
+	 * streamed through a BlockPageParser which decodes the
+	 * transaction IDs straight into transactionHashes.
 	 * 
 	 * @param url the URL address of the desired block
-	 * @return  a string array containing the transaction IDs
-	 */
-	private String[] fetchTransactions(URL url) {
-		String[] strArr = null;                // a string array variable to hold the transaction IDs
-		//String numTransactions = "";         // a string to hold data for total number of transaction fetched from the site      
-        int numTransactions = 0;               // a variable to hold the total number of transactions in this block  
-        int transactionCount = 0;              // a counter to hold the index of the current transaction
-        
+	 */
+	private void fetchTransactions(URL url) {
+		long start = System.nanoTime();
 		try {
             // get URL content
             URLConnection conn = url.openConnection();
 
-            // open the stream and put it into BufferedReader
-            BufferedReader br = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream()));
-
-            String inputLine;               // a String variable to hold the current line from the input stream
-
-            // iterate through the web page source code
-            while ((inputLine = br.readLine()) != null) {  
-            	
-            	// get block number first
-            	if (inputLine.contains("Block #")) {  // finds the line with the Block Number
-           		    int startInd = inputLine.indexOf("#");              // gets the beginning of the data
-                    int endInd = inputLine.lastIndexOf("<");            // gets the end of the data
-                    inputLine = inputLine.substring(startInd+1, endInd);// gets the data
-                    blockNum = Integer.parseInt(inputLine);             // parse data
-            	}  
-                    
-            	// get number of transactions next
-            	if (inputLine.contains("Number Of Transactions")) {      // finds the line with the transaction count Root
-            		 inputLine = br.readLine();                          // the number is on the next line, discard this line
-            		 int startInd = inputLine.indexOf(">");              // gets the beginning of the data
-                     int endInd = inputLine.lastIndexOf("<");            // gets the end of the data
-                     inputLine = inputLine.substring(startInd+1, endInd);// gets the data
-                     numTransactions = Integer.parseInt(inputLine);      // parse data
-                     
-                     
-                     // initialize strArr: this MUST happen within the if block of code
-                     // we need to know numTransactions before initialization but we 
-                     // only want initialization to happen once, so must be in if() block
-                     strArr = new String[numTransactions];
-            	}   
-                
-            	// get the merkle root from the site
-                if (inputLine.contains("Merkle Root")) {                 // finds the portion with the Merkle Root
-                    inputLine = br.readLine();                           // reads the line
-                    int startInd = inputLine.indexOf(">");               // gets the beginning off the data
-                    int endInd = inputLine.lastIndexOf("<");             // gets the end of the data
-                    inputLine = inputLine.substring(startInd+1, endInd); // cuts down to just the root
-                    merkleRoot = inputLine;                              // save the merkle root for verification
-                }
-                
-                // get all of the transaction IDs
-                if (inputLine.contains("\"hash-link\" href=\"/tx/")) {  // finds portion that contains transaction IDs                                       
-                    int ind = 0;
-                    ind = inputLine.indexOf("/tx/");                    // gets the beginning of the data
-                    inputLine = inputLine.substring(ind + 4);           // slices the line to the start of the transaction ID
-                    ind = inputLine.indexOf(">");                       // gets the end of the data
-                    inputLine = inputLine.substring(0, ind - 1);        // cuts down to just the transaction ID
-                    strArr[transactionCount] = inputLine;               // store the transaction ID in the strArr
-                    transactionCount++;                                 // increment the strArr index
-                }
+            // open the stream and parse it
+            InputStream in = conn.getInputStream();
+            try {
+            	parse(in);
+            } finally {
+            	in.close();
             }
-           //closes buffer
-            br.close();
-
         } catch (IOException e) {
-            e.printStackTrace();
+            fetchError = e;                                   // kept for BlockVerify.verify to report
+            Metrics.count(Metrics.Counter.FETCH_FAILURES);
         }
-		return strArr;
+		Metrics.stageDone(Metrics.Stage.FETCH, start);
     }	
 	
+	/**
+	 * This method streams a block page through a 
+	 * BlockPageParser and keeps what it found.
+	 * 
+	 * @param in the block page
+	 * @throws IOException if reading the page fails
+	 */
+	private void parse(InputStream in) throws IOException {
+		long start = System.nanoTime();
+		BlockPageParser parser = new BlockPageParser();   // scans the page in one pass
+		try {
+			parser.parse(in);
+		} finally {
+			blockNum = parser.getBlockNumber();           // keep whatever was found before a failure
+			merkleRoot = parser.getMerkleRoot();
+			transactionHashes = parser.getTransactionHashes();
+			transactionCount = parser.getTransactionCount();
+			declaredCount = parser.getDeclaredTransactionCount();
+			malformedCount = parser.getMalformedCount();
+			
+			MetricsRegistry metrics = Metrics.registry();
+			metrics.increment(Metrics.Counter.BYTES_PARSED, parser.getBytesParsed());
+			metrics.increment(Metrics.Counter.MALFORMED_TXIDS, parser.getMalformedCount());
+			if (merkleRoot.isEmpty() || transactionCount == 0) {
+				metrics.increment(Metrics.Counter.PARSE_FAILURES, 1);   // not a block page
+			}
+			Metrics.stageDone(Metrics.Stage.PARSE, start);
+		}
+	}
+	
 	/**
 	 * This method gets the URL of the most recent block from the
 	 *  https://blockchain.info site.
 	 *  
 	 * @param homePge the URL of the homepge of the blockchain.info site
 	 * @return  a URL of the most recent block of the form https://blockchain.info/...
-	 * @throws MalformedURLException
+	 * @throws IOException if the home page can't be read or
+	 * links to no block
 	 */
-	private static URL fetchMostRecent(String homePge) throws MalformedURLException {
+	private static URL fetchMostRecent(String homePge) throws IOException {
 		URL homePage = new URL(homePge);                   // create a new URL object from the homepage
 		StringBuilder link = new StringBuilder(homePge);   // put the homepage link into a string builder
 		String extension = "";                             // a String variable to hold the extension of the most recent block
 	
-		try {
-            // get web page content
-            URLConnection conn = homePage.openConnection();
+		// get web page content
+		URLConnection conn = homePage.openConnection();
 
-            // open the stream and put it into BufferedReader
-            BufferedReader br = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream()));
+		// open the stream and put it into BufferedReader
+		try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(conn.getInputStream()))) {
 
             String inputLine;                // a variable to hold html data from the web page
             
@@ -170,16 +181,15 @@ public class Block {
                     break;
             	}
             } 
-            
-            // create the new URL
-            link = link.append(extension);                // append the extension to the home page address 
-            URL topBlockLink = new URL(link.toString());  // make a URL Object out of the address string
-            return topBlockLink;                          // return the URL Object
-            
-		} catch (IOException e) {
-        e.printStackTrace();
 		}
-		return null;
+		if (extension.isEmpty()) {
+			throw new IOException("no block link on " + homePge);
+		}
+		
+		// create the new URL
+		link = link.append(extension);                // append the extension to the home page address 
+		URL topBlockLink = new URL(link.toString());  // make a URL Object out of the address string
+		return topBlockLink;                          // return the URL Object
 	}
 	
 	
@@ -191,12 +201,28 @@ public class Block {
 	 */
 	public URL getURL() { return blockURL; }
 	
+	/**
+	 * This method returns the hash of this block taken
+	 * from the end of its URL, which on the blockchain.info 
+	 * site is of the form https://blockchain.info/block/hash
+	 * 
+	 * @return the hex hash of this block, or null if the
+	 * URL does not end with one
+	 */
+	@Override
+	public String getBlockHash() {
+		String path = blockURL.getPath();
+		String hash = path.substring(path.lastIndexOf('/') + 1);   // the last part of the path
+		return MerkleTree.isTxid(hash) ? hash.toLowerCase() : null;
+	}
+	
 	/**
 	 * This method returns the Merkle Root of this 
 	 * block extracted from the web page.
 	 * 
 	 * @return the Merkle Root of this block
 	 */
+	@Override
 	public String getMerkleRoot() { return merkleRoot; }
 	
 	/**
@@ -206,7 +232,65 @@ public class Block {
 	 * @return a string array containing all of the 
 	 * transaction IDS found in this block
 	 */
-	public String[] getTransactionIDs() { return transactionIDs; }
+	@Override
+	public String[] getTransactionIDs() { 
+		if (transactionIDs == null) {
+			String[] ids = new String[transactionCount];
+			for (int i = 0; i < transactionCount; ++i) {
+				ids[i] = MerkleTree.encodeTxid(transactionHashes, i * MerkleTree.HASH_LEN);
+			}
+			transactionIDs = ids;
+		}
+		return transactionIDs; 
+	}
+	
+	/**
+	 * This method returns the transaction IDs found in
+	 * this block packed 32 bytes apiece in LITTLE-ENDIAN
+	 * order, ready for a MerkleTree. The array may be 
+	 * longer than getTransactionCount() hashes.
+	 * 
+	 * @return the packed transaction IDs
+	 */
+	@Override
+	public byte[] getTransactionHashes() { return transactionHashes; }
+	
+	/**
+	 * This method returns the number of transaction IDs
+	 * found in this block.
+	 * 
+	 * @return the number of transaction IDs
+	 */
+	@Override
+	public int getTransactionCount() { return transactionCount; }
+	
+	/**
+	 * This method returns the number of transactions
+	 * the page says the block has.
+	 * 
+	 * @return the transaction count from the page, or -1
+	 * if the page had none
+	 */
+	@Override
+	public int getDeclaredTransactionCount() { return declaredCount; }
+	
+	/**
+	 * This method returns the number of transaction IDs
+	 * on the page that were not 64 hex digits.
+	 * 
+	 * @return the number of malformed transaction IDs
+	 */
+	@Override
+	public int getMalformedCount() { return malformedCount; }
+	
+	/**
+	 * This method returns what went wrong reading the
+	 * page of this block.
+	 * 
+	 * @return the exception, or null if the page was read
+	 */
+	@Override
+	public IOException getFetchError() { return fetchError; }
 	
 	/**
 	 * This method returns the block number of this
@@ -214,6 +298,7 @@ public class Block {
 	 * 
 	 * @return the block number of this block
 	 */
+	@Override
 	public int getBlockNumber() { return blockNum; }
 	
 	
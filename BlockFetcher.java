@@ -0,0 +1,262 @@
+package MerkleTreeVerify;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * This class fetches block pages from the https://blockchain.info
+ * site, or any server laid out the same way such as a local
+ * stub serving recorded pages. It uses one shared HttpClient
+ * so connections are kept alive and reused, puts connect and
+ * request timeouts on every call, lets no more than a set 
+ * number of requests run at once and retries failed requests
+ * with exponential backoff.
+ * 
+ * Fetches run on virtual threads when the JVM has them
+ * (Java 21 and up) and otherwise on a pool of maxConcurrent
+ * threads, so fetchAll() of many blocks queues them up 
+ * instead of starting a thread for each.
+ */
+public class BlockFetcher implements Closeable {
+	/** the site blocks are fetched from by default */
+	public static final URI DEFAULT_BASE = URI.create("https://blockchain.info/");
+	
+	private static final String BLOCK_LINK = "<a href=\"/block/";   // how a link to a block page starts
+	
+	private final URI base;                 // the front page of the site
+	private final HttpClient client;        // shared by every request so connections are reused
+	private final ExecutorService executor; // runs the fetches
+	private final Semaphore permits;        // bounds the requests in flight
+	private final Duration requestTimeout;  // how long one request may take
+	private final int maxRetries;           // how many times a failed request is tried again
+	private final long backoffMillis;       // the wait before the first retry, doubled each retry
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	/**
+	 * Constructs a BlockFetcher.
+	 * 
+	 * @param base the front page of the site, block pages 
+	 * are found under base/block/ and base/block-height/
+	 * @param maxConcurrent the most requests in flight at once
+	 * @param connectTimeout how long connecting may take
+	 * @param requestTimeout how long a whole request may take
+	 * @param maxRetries how many times a failed request is tried again
+	 * @param backoff the wait before the first retry
+	 */
+	public BlockFetcher(URI base, int maxConcurrent, Duration connectTimeout, Duration requestTimeout,
+	                    int maxRetries, Duration backoff) {
+		if (maxConcurrent < 1 || maxRetries < 0) {
+			throw new IllegalArgumentException("need at least one request in flight and no negative retries");
+		}
+		this.base = base.toString().endsWith("/") ? base : URI.create(base + "/");
+		ExecutorService virtual = newVirtualExecutor();
+		this.executor = (virtual != null) ? virtual : Executors.newFixedThreadPool(maxConcurrent);
+		this.permits = new Semaphore(maxConcurrent);
+		this.requestTimeout = requestTimeout;
+		this.maxRetries = maxRetries;
+		this.backoffMillis = backoff.toMillis();
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.connectTimeout(connectTimeout)
+				.followRedirects(HttpClient.Redirect.NORMAL);
+		if (virtual != null) {
+			builder.executor(virtual);                    // the fixed pool is kept for the fetches, its threads wait on send()
+		}
+		this.client = builder.build();
+	}
+	
+	/**
+	 * Constructs a BlockFetcher for the blockchain.info 
+	 * site with 16 requests in flight, a 10 second connect
+	 * timeout, a 30 second request timeout and 3 retries.
+	 */
+	public BlockFetcher() {
+		this(DEFAULT_BASE, 16, Duration.ofSeconds(10), Duration.ofSeconds(30), 3, Duration.ofMillis(200));
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Fetches a block by its hash.
+	 * 
+	 * @param blockHash the hex hash of the block
+	 * @return the block
+	 * @throws IOException if the block can't be fetched
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Block fetch(String blockHash) throws IOException, InterruptedException {
+		return fetch(base.resolve("block/" + blockHash));
+	}
+	
+	/**
+	 * Fetches a block page.
+	 * 
+	 * @param page the URI of the block page
+	 * @return the block
+	 * @throws IOException if the block can't be fetched
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Block fetch(URI page) throws IOException, InterruptedException {
+		byte[] body = get(page);
+		return new Block(page.toURL(), new ByteArrayInputStream(body));
+	}
+	
+	/**
+	 * Fetches the block at a height, going through the 
+	 * page of blocks at that height.
+	 * 
+	 * @param height the block number
+	 * @return the block
+	 * @throws IOException if the block can't be fetched
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Block fetchHeight(int height) throws IOException, InterruptedException {
+		return fetch(findBlockLink(base.resolve("block-height/" + height)));
+	}
+	
+	/**
+	 * Fetches the most recent block from the front page.
+	 * 
+	 * @return the block
+	 * @throws IOException if the block can't be fetched
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Block fetchLatest() throws IOException, InterruptedException {
+		return fetch(findBlockLink(base));
+	}
+	
+	/**
+	 * Starts fetching many blocks at once, no more than 
+	 * maxConcurrent of them talking to the site at a time.
+	 * 
+	 * @param blockHashes the hex hashes of the blocks
+	 * @return one future per hash, in the same order
+	 */
+	public List<Future<Block>> fetchAll(List<String> blockHashes) {
+		List<Future<Block>> futures = new ArrayList<Future<Block>>(blockHashes.size());
+		for (String hash : blockHashes) {
+			futures.add(executor.submit(source(hash)));
+		}
+		return futures;
+	}
+	
+	/**
+	 * @param blockHash the hex hash of a block
+	 * @return a source that fetches the block when called,
+	 * for use with BatchVerify
+	 */
+	public Callable<Block> source(final String blockHash) {
+		return new Callable<Block>() {
+			@Override
+			public Block call() throws Exception { return fetch(blockHash); }
+		};
+	}
+	
+	/**
+	 * @param height a block number
+	 * @return a source that fetches the block at height
+	 * when called, for use with BatchVerify
+	 */
+	public Callable<Block> heightSource(final int height) {
+		return new Callable<Block>() {
+			@Override
+			public Block call() throws Exception { return fetchHeight(height); }
+		};
+	}
+	
+	/**
+	 * Stops the fetch threads, fetches still running are 
+	 * interrupted.
+	 */
+	@Override
+	public void close() { executor.shutdownNow(); }
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	/**
+	 * Gets a page, retrying with exponential backoff and
+	 * some jitter when the request fails, times out or the
+	 * server answers 429 or 5xx. Any other status other 
+	 * than 200 fails straight away.
+	 */
+	private byte[] get(URI uri) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(uri).timeout(requestTimeout).GET().build();
+		long wait = backoffMillis;
+		
+		for (int attempt = 0; ; ++attempt) {
+			IOException failure;
+			boolean retry = true;
+			permits.acquire();
+			long start = System.nanoTime();
+			try {
+				HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+				int status = response.statusCode();
+				if (status == 200) {
+					Metrics.stageDone(Metrics.Stage.FETCH, start);
+					return response.body();
+				}
+				failure = new IOException("HTTP " + status + " from " + uri);
+				retry = status == 429 || status >= 500;           // asking again won't help with anything else
+			} catch (IOException e) {
+				failure = e;                                      // timeouts land here too
+			} finally {
+				permits.release();
+			}
+			
+			if (!retry || attempt >= maxRetries) {
+				Metrics.count(Metrics.Counter.FETCH_FAILURES);
+				throw failure;
+			}
+			Thread.sleep(wait + ThreadLocalRandom.current().nextLong(wait / 2 + 1));
+			wait *= 2;
+		}
+	}
+	
+	/**
+	 * Gets a page and returns the first block page it
+	 * links to.
+	 */
+	private URI findBlockLink(URI page) throws IOException, InterruptedException {
+		String html = new String(get(page), StandardCharsets.UTF_8);
+		int start = html.indexOf(BLOCK_LINK);
+		if (start < 0) {
+			throw new IOException("no block link on " + page);
+		}
+		start += "<a href=\"/".length();
+		int end = html.indexOf('"', start);
+		if (end < 0) {
+			throw new IOException("block link never ends on " + page);
+		}
+		return base.resolve(html.substring(start, end));
+	}
+	
+	/**
+	 * @return a virtual thread per task executor, or null
+	 * if the JVM has no virtual threads
+	 */
+	private static ExecutorService newVirtualExecutor() {
+		try {
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;                                  // no virtual threads before Java 21
+		}
+	}
+}
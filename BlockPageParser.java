@@ -0,0 +1,292 @@
+package MerkleTreeVerify;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * This class pulls the block number, transaction count,
+ * merkle root and transaction IDs out of a block page from
+ * https://blockchain.info in a single pass over the raw 
+ * bytes. A small state machine watches for the markers that
+ * come before each piece of data and each 64 character hex
+ * transaction ID is decoded straight into its 32 byte slot
+ * of a growable array, so no String is made per line or
+ * per transaction.
+ * 
+ * The transaction IDs may come before or after the 
+ * transaction count, the count is only used to size the 
+ * array up front.
+ */
+final class BlockPageParser {
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	private static final int INITIAL_SLOTS = 256;      // the slots allocated when the count is not known yet
+	
+	// what the parser is doing with the current byte
+	private static final int SCAN = 0;                 // looking for a marker
+	private static final int BLOCK_NUM = 1;            // reading the digits of the block number
+	private static final int SKIP_LINE = 2;            // skipping the rest of the marker line
+	private static final int SKIP_TAG = 3;             // skipping up to the end of the first tag on the line
+	private static final int TX_COUNT = 4;             // reading the digits of the transaction count
+	private static final int ROOT = 5;                 // reading the merkle root
+	private static final int TXID = 6;                 // decoding a transaction ID
+	
+	// the markers, in the same order as the patterns below
+	private static final int MARK_BLOCK_NUM = 0;
+	private static final int MARK_TX_COUNT = 1;
+	private static final int MARK_ROOT = 2;
+	private static final int MARK_TXID = 3;
+	
+	private final Marker[] markers = {
+		new Marker("Block #"),
+		new Marker("Number Of Transactions"),
+		new Marker("Merkle Root"),
+		new Marker("\"hash-link\" href=\"/tx/"),
+	};
+	private final byte[] chunk = new byte[8192];       // the bytes read from the stream
+	private final StringBuilder root = new StringBuilder(2 * HASH_LEN);
+	
+	private int state;             // one of the states above
+	private int afterSkip;         // the state to go to once SKIP_LINE and SKIP_TAG are done
+	private long number;           // the number being read
+	private int nibbles;           // the hex digits of the current transaction ID decoded so far
+	
+	private int blockNum;
+	private int declaredCount = -1;
+	private String merkleRoot = "";
+	private byte[] hashes;
+	private int count;
+	private int malformed;
+	private long bytes;
+	
+	
+	//----------------Package Methods-------------------------------------------------//
+	
+	/**
+	 * Parses a whole block page. The parser starts over
+	 * on every call.
+	 * 
+	 * @param in the page, read until the end
+	 * @throws IOException if reading fails
+	 */
+	void parse(InputStream in) throws IOException {
+		reset();
+		int n;
+		while ((n = in.read(chunk)) != -1) {
+			for (int i = 0; i < n; ++i) {
+				next(chunk[i]);
+			}
+			bytes += n;
+		}
+	}
+	
+	/** @return the block number, 0 if the page had none */
+	int getBlockNumber() { return blockNum; }
+	
+	/** @return the transaction count the page gave, -1 if it gave none */
+	int getDeclaredTransactionCount() { return declaredCount; }
+	
+	/** @return the merkle root the page gave, empty if it gave none */
+	String getMerkleRoot() { return merkleRoot; }
+	
+	/**
+	 * @return the transaction IDs packed 32 bytes apiece
+	 * in LITTLE-ENDIAN order, the array may be longer 
+	 * than getTransactionCount() hashes
+	 */
+	byte[] getTransactionHashes() { return hashes; }
+	
+	/** @return the number of transaction IDs found */
+	int getTransactionCount() { return count; }
+	
+	/** @return the number of transaction IDs skipped for not being 64 hex digits */
+	int getMalformedCount() { return malformed; }
+	
+	/** @return the number of bytes of the page read */
+	long getBytesParsed() { return bytes; }
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	private void reset() {
+		for (Marker m : markers) {
+			m.matched = 0;
+		}
+		state = SCAN;
+		blockNum = 0;
+		declaredCount = -1;
+		merkleRoot = "";
+		hashes = new byte[INITIAL_SLOTS * HASH_LEN];   // the array is handed to the caller so a new one is needed
+		count = 0;
+		malformed = 0;
+		bytes = 0;
+	}
+	
+	/**
+	 * Moves the state machine along by one byte.
+	 */
+	private void next(byte b) {
+		switch (state) {
+		case SCAN:
+			for (int m = 0; m < markers.length; ++m) {
+				if (markers[m].next(b)) {
+					found(m);
+					return;
+				}
+			}
+			return;
+			
+		case BLOCK_NUM:
+		case TX_COUNT:
+			if (b >= '0' && b <= '9') {
+				number = Math.min(number * 10 + (b - '0'), Integer.MAX_VALUE);   // a page can't make it wrap
+			} else if (b == '<' || b == '\n') {                 // the number ends at the next tag
+				if (state == BLOCK_NUM) {
+					blockNum = (int) number;
+				} else {
+					declaredCount = (int) number;
+					ensureSlots(Math.min(declaredCount, MerkleTree.MAX_TRANSACTIONS));   // the page is not trusted with more
+				}
+				state = SCAN;
+			} else if (b != ',' && b != ' ') {
+				state = SCAN;                                   // not a number after all
+			}
+			return;
+			
+		case SKIP_LINE:
+			if (b == '\n') {
+				state = SKIP_TAG;
+			}
+			return;
+			
+		case SKIP_TAG:
+			if (b == '>') {
+				state = afterSkip;
+			}
+			return;
+			
+		case ROOT:
+			if (b == '<' || b == '\n') {
+				merkleRoot = root.toString();
+				state = SCAN;
+			} else {
+				root.append((char) (b & 0xff));
+			}
+			return;
+			
+		case TXID:
+			int digit = Character.digit(b, 16);
+			if (digit < 0 || nibbles == 2 * HASH_LEN) {
+				if (nibbles == 2 * HASH_LEN && b == '"') {      // a whole transaction ID then the closing quote
+					++count;
+				} else {
+					++malformed;
+				}
+				state = SCAN;
+				next(b);                                        // the byte may start a marker
+				return;
+			}
+			// the last hex digit pair is the first byte of the slot
+			int pos = count * HASH_LEN + HASH_LEN - 1 - (nibbles >> 1);
+			if ((nibbles & 1) == 0) {
+				hashes[pos] = (byte) (digit << 4);
+			} else {
+				hashes[pos] |= digit;
+			}
+			++nibbles;
+			return;
+		}
+	}
+	
+	/**
+	 * Sets up the state for the data after marker m.
+	 */
+	private void found(int m) {
+		for (Marker marker : markers) {
+			marker.matched = 0;
+		}
+		switch (m) {
+		case MARK_BLOCK_NUM:
+			number = 0;
+			state = BLOCK_NUM;
+			break;
+		case MARK_TX_COUNT:
+			number = 0;
+			state = SKIP_LINE;                                  // the count is on the next line
+			afterSkip = TX_COUNT;
+			break;
+		case MARK_ROOT:
+			root.setLength(0);
+			state = SKIP_LINE;                                  // the root is on the next line
+			afterSkip = ROOT;
+			break;
+		case MARK_TXID:
+			ensureSlots(count + 1);
+			nibbles = 0;
+			state = TXID;
+			break;
+		}
+	}
+	
+	/**
+	 * Grows the hash array to hold at least slots hashes.
+	 */
+	private void ensureSlots(int slots) {
+		if ((long) slots * HASH_LEN > hashes.length) {
+			long grown = Math.max(slots, 2L * (hashes.length / HASH_LEN));
+			grown = Math.min(grown, Integer.MAX_VALUE / HASH_LEN);
+			if (grown < slots) {
+				throw new IllegalArgumentException("too many transaction IDs: " + slots);
+			}
+			byte[] bigger = new byte[(int) grown * HASH_LEN];
+			System.arraycopy(hashes, 0, bigger, 0, count * HASH_LEN);
+			hashes = bigger;
+		}
+	}
+	
+	//---------------Nested Marker Class----------------------------------//
+	
+	/**
+	 * This class matches one marker against a stream of
+	 * bytes using the Knuth-Morris-Pratt failure table, 
+	 * so a partial match that breaks off is never missed.
+	 */
+	private static class Marker {
+		final byte[] pattern;
+		final int[] fail;      // how much of the pattern is still matched after a mismatch
+		int matched;           // how much of the pattern has been matched
+		
+		Marker(String text) {
+			pattern = new byte[text.length()];
+			for (int i = 0; i < pattern.length; ++i) {
+				pattern[i] = (byte) text.charAt(i);
+			}
+			fail = new int[pattern.length];
+			for (int i = 1, k = 0; i < pattern.length; ++i) {
+				while (k > 0 && pattern[i] != pattern[k]) {
+					k = fail[k - 1];
+				}
+				if (pattern[i] == pattern[k]) {
+					++k;
+				}
+				fail[i] = k;
+			}
+		}
+		
+		/**
+		 * @return true when b completes the marker
+		 */
+		boolean next(byte b) {
+			while (matched > 0 && pattern[matched] != b) {
+				matched = fail[matched - 1];
+			}
+			if (pattern[matched] == b) {
+				++matched;
+			}
+			if (matched == pattern.length) {
+				matched = 0;
+				return true;
+			}
+			return false;
+		}
+	}
+	//------------End Nested Marker Class------------------------------------//
+}
@@ -0,0 +1,64 @@
+package MerkleTreeVerify;
+
+
+/**
+ * This interface is anything a block can be verified
+ * from. It gives the merkle root the block claims along 
+ * with the transaction IDs the root is checked against.
+ * Block gets these from the https://blockchain.info site,
+ * RawBlock from the blk*.dat files of a local node.
+ */
+public interface BlockSource {
+	
+	/**
+	 * @return the block number (height) of this block,
+	 * or -1 if it is not known
+	 */
+	int getBlockNumber();
+	
+	/**
+	 * @return the hex hash of this block, or null if 
+	 * it is not known
+	 */
+	String getBlockHash();
+	
+	/**
+	 * @return the hex merkle root given by this block
+	 */
+	String getMerkleRoot();
+	
+	/**
+	 * @return the transaction IDs packed 32 bytes apiece
+	 * in LITTLE-ENDIAN order, the array may be longer 
+	 * than getTransactionCount() hashes
+	 */
+	byte[] getTransactionHashes();
+	
+	/**
+	 * @return the number of transactions in this block
+	 */
+	int getTransactionCount();
+	
+	/**
+	 * @return the hex transaction IDs of this block
+	 */
+	String[] getTransactionIDs();
+	
+	/**
+	 * @return the number of transactions the block says
+	 * it has, or -1 if it does not say
+	 */
+	int getDeclaredTransactionCount();
+	
+	/**
+	 * @return the number of transaction IDs that were
+	 * skipped for being malformed
+	 */
+	int getMalformedCount();
+	
+	/**
+	 * @return why the block could not be fetched, or 
+	 * null if it was
+	 */
+	Exception getFetchError();
+}
@@ -13,7 +13,7 @@ import java.net.URLConnection;
 
 /**
  * This class is a BlockVerify Object that takes in 
- * a Block Object as a parameter and instantiates a 
+ * a BlockSource Object as a parameter and instantiates a 
  * MerkleTree Object. Data from the Block and the Merkle
  * Tree are then compared in instance methods. 
  * 
@@ -21,8 +21,9 @@ import java.net.URLConnection;
  * date: 07/17/2015
  */
 public class BlockVerify {
-	MerkleTree merkTree;       // a variable to hold the MerkleTree object
-	Block block;               // a variable to hold a Block object
+	MerkleTree merkTree;       // a variable to hold the MerkleTree object, null when the root came from a cache
+	String treeRoot;           // a string to hold the merkle root computed from the transactions
+	BlockSource block;         // a variable to hold the block being verified
 	String[] transactionIDs;   // a string array to hold the transaction IDs
 	String merkleRoot = "";    // a string to hold a merkleRoot
 	
@@ -30,14 +31,44 @@ public class BlockVerify {
 	/**
 	 * This constructor constructs a BlockVerify object 
 	 *  
-	 * @param blk a Block Object used to create a MerkleTree
+	 * @param blk a BlockSource Object used to create a MerkleTree
 	 * object 
 	 */
-	public BlockVerify(Block blk) {
+	public BlockVerify(BlockSource blk) {
+		long start = System.nanoTime();
 		block = blk;
 		merkleRoot = blk.getMerkleRoot();
-		transactionIDs = blk.getTransactionIDs();     // get the transactionIDs
-		merkTree = new MerkleTree(transactionIDs);    // gets the merkleTree associated with the transactionIDs 
+		merkTree = new MerkleTree(blk.getTransactionHashes(), blk.getTransactionCount());  // gets the merkleTree associated with the transactionIDs 
+		treeRoot = merkTree.getMerkleRoot();
+		recordMetrics(start);
+	}
+	
+	/**
+	 * This constructor constructs a BlockVerify object
+	 * that first looks the block up in cache and only 
+	 * builds a MerkleTree when it is not there, adding
+	 * the result to cache. Only blocks that verified are
+	 * taken from the cache, so a block that failed is 
+	 * hashed again when it is fetched again.
+	 * 
+	 * @param blk a BlockSource Object used to create a MerkleTree
+	 * object 
+	 * @param cache the cache of verified blocks
+	 */
+	public BlockVerify(BlockSource blk, VerificationCache cache) {
+		long start = System.nanoTime();
+		block = blk;
+		merkleRoot = blk.getMerkleRoot();
+		VerificationCache.Entry cached = cache.get(blk.getBlockHash(), blk.getBlockNumber());
+		if (cached != null && cached.isVerified()) {
+			merkTree = cached.getTree();
+			treeRoot = cached.getComputedRoot();
+		} else {
+			merkTree = new MerkleTree(blk.getTransactionHashes(), blk.getTransactionCount());
+			treeRoot = merkTree.getMerkleRoot();
+			cache.put(blk.getBlockHash(), blk.getBlockNumber(), treeRoot, merkleRoot, merkTree);
+		}
+		recordMetrics(start);
 	}
 	//----------------End Constructors---------------------------------------//
 	
@@ -49,7 +80,12 @@ public class BlockVerify {
 	 * 
 	 * @return the transactionIDs obtained from the block
 	 */
-	public String[] getTransactions() { return transactionIDs; }
+	public String[] getTransactions() { 
+		if (transactionIDs == null) {
+			transactionIDs = block.getTransactionIDs();   // only made into strings when asked for
+		}
+		return transactionIDs; 
+	}
 	
 	/**
 	 * This method gets the Merkle Root from the block
@@ -68,7 +104,7 @@ public class BlockVerify {
 	 * @return the Merkle Root from the merkTree instance 
 	 * variable
 	 */
-	public String getRootFromTree() { return merkTree.getMerkleRoot(); }
+	public String getRootFromTree() { return treeRoot; }
 	
 	
 	/**
@@ -79,7 +115,54 @@ public class BlockVerify {
 	 * @return a boolean if the Merkle Roots from the block instance
 	 * variable and the merkTree instance variable are equal 
 	 */
-	public boolean verifyRoot() { return merkTree.getMerkleRoot().equals(merkleRoot); }
+	public boolean verifyRoot() { return treeRoot != null && treeRoot.equals(merkleRoot); }
+	
+	/**
+	 * This method gets the result of this verification.
+	 * 
+	 * @return MATCH or MISMATCH
+	 */
+	public VerificationResult getResult() {
+		VerificationResult.Status status = verifyRoot() ? VerificationResult.Status.MATCH
+		                                                : VerificationResult.Status.MISMATCH;
+		return new VerificationResult(status, block.getBlockNumber(), block.getBlockHash(), treeRoot, merkleRoot, null);
+	}
+	
+	/**
+	 * This method verifies a block without throwing. The
+	 * block is checked in a single pass first and turned
+	 * away without any hashing if it could not be fetched,
+	 * has a malformed transaction ID or root, or holds a
+	 * different number of transactions than it says. A 
+	 * block whose data can't be read, such as a truncated
+	 * raw transaction, comes back MALFORMED_INPUT.
+	 * 
+	 * @param blk the block to verify
+	 * @return the result
+	 */
+	public static VerificationResult verify(BlockSource blk) {
+		return verify(blk, (VerificationCache) null);
+	}
+	
+	/**
+	 * This method verifies a block like verify(BlockSource)
+	 * but looks it up in cache first.
+	 * 
+	 * @param blk the block to verify
+	 * @param cache the cache of verified blocks, or null
+	 * @return the result
+	 */
+	public static VerificationResult verify(BlockSource blk, VerificationCache cache) {
+		try {
+			VerificationResult rejected = check(blk);
+			if (rejected != null) {
+				return rejected;
+			}
+			return ((cache == null) ? new BlockVerify(blk) : new BlockVerify(blk, cache)).getResult();
+		} catch (RuntimeException e) {                          // the block data could not be read
+			return malformed(blk, e);
+		}
+	}
 	
 	
 	/**
@@ -91,6 +174,113 @@ public class BlockVerify {
 	 */
 	public int getBlockNumber() { return block.getBlockNumber(); }
 	
+	/**
+	 * This method verifies a block like verify(BlockSource)
+	 * but works the root out with builder instead of a new
+	 * MerkleTree, so a worker verifying block after block
+	 * reuses the same scratch arrays.
+	 * 
+	 * @param blk the block to verify
+	 * @param builder the builder of the calling thread
+	 * @return the result
+	 */
+	public static VerificationResult verify(BlockSource blk, MerkleTreeBuilder builder) {
+		try {
+			VerificationResult rejected = check(blk);
+			if (rejected != null) {
+				return rejected;
+			}
+			long start = System.nanoTime();
+			builder.reset();
+			builder.addAll(blk.getTransactionHashes(), blk.getTransactionCount());
+			String computed = builder.getMerkleRoot();
+			String expected = blk.getMerkleRoot();
+			boolean match = computed.equals(expected);
+			
+			MetricsRegistry metrics = Metrics.registry();
+			metrics.increment(Metrics.Counter.BLOCKS_VERIFIED, 1);
+			if (!match) {
+				metrics.increment(Metrics.Counter.MISMATCHES, 1);
+			}
+			metrics.recordBlockSize(blk.getTransactionCount());
+			Metrics.stageDone(Metrics.Stage.VERIFY, start);
+			return new VerificationResult(match ? VerificationResult.Status.MATCH : VerificationResult.Status.MISMATCH,
+			                              blk.getBlockNumber(), blk.getBlockHash(), computed, expected, null);
+		} catch (RuntimeException e) {                          // the block data could not be read
+			return malformed(blk, e);
+		}
+	}
+	
+	//------------------------Private Methods--------------------------------//
+	
+	/**
+	 * Checks a block before hashing.
+	 * 
+	 * @param blk the block to check
+	 * @return the result turning the block away, or null
+	 * if it is fit to hash
+	 */
+	private static VerificationResult check(BlockSource blk) {
+		if (blk.getFetchError() != null) {
+			return VerificationResult.rejected(VerificationResult.Status.FETCH_FAILED, blk,
+			                                   String.valueOf(blk.getFetchError()));
+		}
+		if (blk.getMalformedCount() > 0) {
+			return VerificationResult.rejected(VerificationResult.Status.MALFORMED_INPUT, blk,
+			                                   blk.getMalformedCount() + " malformed transaction IDs");
+		}
+		if (!MerkleTree.isTxid(blk.getMerkleRoot())) {
+			return VerificationResult.rejected(VerificationResult.Status.MALFORMED_INPUT, blk,
+			                                   "bad merkle root: " + blk.getMerkleRoot());
+		}
+		int declared = blk.getDeclaredTransactionCount();
+		if (declared >= 0 && declared != blk.getTransactionCount()) {
+			return VerificationResult.rejected(VerificationResult.Status.COUNT_MISMATCH, blk,
+			                                   "says " + declared + " transactions, has " + blk.getTransactionCount());
+		}
+		if (blk.getTransactionCount() == 0) {
+			return VerificationResult.rejected(VerificationResult.Status.MALFORMED_INPUT, blk, "no transactions");
+		}
+		return null;
+	}
+	
+	/**
+	 * Makes the result of a block whose data could not be
+	 * read, keeping whatever of the block can still be read.
+	 * 
+	 * @param blk the block
+	 * @param e what went wrong reading it
+	 * @return a MALFORMED_INPUT result
+	 */
+	private static VerificationResult malformed(BlockSource blk, RuntimeException e) {
+		int number = -1;
+		String hash = null;
+		String root = null;
+		try {
+			root = blk.getMerkleRoot();
+			hash = blk.getBlockHash();
+			number = blk.getBlockNumber();
+		} catch (RuntimeException again) {
+			// the block is too broken to say more
+		}
+		return new VerificationResult(VerificationResult.Status.MALFORMED_INPUT, number, hash, null, root, String.valueOf(e));
+	}
+	
+	/**
+	 * Reports this verification to the metrics registry.
+	 * 
+	 * @param start when verification started, from System.nanoTime()
+	 */
+	private void recordMetrics(long start) {
+		MetricsRegistry metrics = Metrics.registry();
+		metrics.increment(Metrics.Counter.BLOCKS_VERIFIED, 1);
+		if (treeRoot == null || !treeRoot.equals(merkleRoot)) {
+			metrics.increment(Metrics.Counter.MISMATCHES, 1);
+		}
+		metrics.recordBlockSize(block.getTransactionCount());
+		Metrics.stageDone(Metrics.Stage.VERIFY, start);
+	}
+	
 	//------------------------End Public Methods-----------------------------//	
 }
 
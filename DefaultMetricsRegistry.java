@@ -0,0 +1,143 @@
+package MerkleTreeVerify;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * This class keeps a Histogram of latencies for every
+ * stage, a histogram of transactions per block and a
+ * LongAdder for every counter. It can be registered with
+ * the platform MBean server to be read over JMX.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry, MetricsMXBean {
+	/** the name the registry is registered under */
+	public static final String OBJECT_NAME = "MerkleTreeVerify:type=Metrics";
+	
+	private final Histogram[] latencies = new Histogram[Metrics.Stage.values().length];
+	private final LongAdder[] counters = new LongAdder[Metrics.Counter.values().length];
+	private final Histogram blockSizes = new Histogram();
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	public DefaultMetricsRegistry() {
+		for (int i = 0; i < latencies.length; ++i) {
+			latencies[i] = new Histogram();
+		}
+		for (int i = 0; i < counters.length; ++i) {
+			counters[i] = new LongAdder();
+		}
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Registers this registry with the platform MBean 
+	 * server under OBJECT_NAME.
+	 * 
+	 * @throws JMException if registering fails, for 
+	 * example when something is already registered there
+	 */
+	public void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, new ObjectName(OBJECT_NAME));
+	}
+	
+	@Override
+	public void recordLatency(Metrics.Stage stage, long nanos) { latencies[stage.ordinal()].record(nanos); }
+	
+	@Override
+	public void increment(Metrics.Counter counter, long delta) { counters[counter.ordinal()].add(delta); }
+	
+	@Override
+	public void recordBlockSize(int transactions) { blockSizes.record(transactions); }
+	
+	/**
+	 * @param stage a stage
+	 * @return the latency histogram of that stage, in nanoseconds
+	 */
+	public Histogram getLatency(Metrics.Stage stage) { return latencies[stage.ordinal()]; }
+	
+	/**
+	 * @param counter a counter
+	 * @return the value of that counter
+	 */
+	public long getCount(Metrics.Counter counter) { return counters[counter.ordinal()].sum(); }
+	
+	/**
+	 * @return the histogram of transactions per verified block
+	 */
+	public Histogram getBlockSizes() { return blockSizes; }
+	
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (Metrics.Counter c : Metrics.Counter.values()) {
+			map.put(c.name(), getCount(c));
+		}
+		return map;
+	}
+	
+	@Override
+	public Map<String, Double> getLatencyP50Millis() { return percentiles(50); }
+	
+	@Override
+	public Map<String, Double> getLatencyP99Millis() { return percentiles(99); }
+	
+	@Override
+	public Map<String, Double> getLatencyMaxMillis() { return percentiles(100); }
+	
+	@Override
+	public Map<String, Long> getLatencyCounts() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (Metrics.Stage s : Metrics.Stage.values()) {
+			map.put(s.name(), getLatency(s).getCount());
+		}
+		return map;
+	}
+	
+	@Override
+	public double getMeanTransactionsPerBlock() { return blockSizes.getMean(); }
+	
+	@Override
+	public double getHashesPerSecond() {
+		return perSecond(getCount(Metrics.Counter.HASHES), getLatency(Metrics.Stage.TREE_BUILD).getSum());
+	}
+	
+	@Override
+	public double getBytesParsedPerSecond() {
+		long nanos = getLatency(Metrics.Stage.PARSE).getSum() + getLatency(Metrics.Stage.FETCH).getSum();
+		return perSecond(getCount(Metrics.Counter.BYTES_PARSED), nanos);
+	}
+	
+	@Override
+	public void reset() {
+		for (Histogram h : latencies) {
+			h.reset();
+		}
+		for (LongAdder c : counters) {
+			c.reset();
+		}
+		blockSizes.reset();
+	}
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	private Map<String, Double> percentiles(double percentile) {
+		Map<String, Double> map = new LinkedHashMap<String, Double>();
+		for (Metrics.Stage s : Metrics.Stage.values()) {
+			map.put(s.name(), getLatency(s).getValueAtPercentile(percentile) / 1e6);
+		}
+		return map;
+	}
+	
+	private static double perSecond(long amount, long nanos) {
+		return (nanos == 0) ? 0 : amount * 1e9 / nanos;
+	}
+}
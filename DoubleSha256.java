@@ -0,0 +1,95 @@
+package MerkleTreeVerify;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * This class wraps a single sha256 MessageDigest and
+ * a small scratch buffer so that double sha256 hashes
+ * (the hash used all over the bitcoin protocol) can be
+ * computed straight into a caller supplied byte array.
+ * One instance is kept per thread, get() hands back the
+ * instance belonging to the calling thread. Nothing
+ * is allocated once the instance exists.
+ *
+ * All byte arrays are taken as is, no byte order
+ * reversal is done here.
+ */
+final class DoubleSha256 {
+	static final int HASH_LEN = 32;    // the number of bytes in a sha256 hash
+
+	private static final ThreadLocal<DoubleSha256> LOCAL = new ThreadLocal<DoubleSha256>() {
+		@Override
+		protected DoubleSha256 initialValue() { return new DoubleSha256(); }
+	};
+
+	private final MessageDigest digest;                // the sha256 digest reused for every hash
+	private final byte[] first = new byte[HASH_LEN];   // holds the result of the first sha256 pass
+
+
+	//----------------Constructor---------------------------------------------------------------//
+	private DoubleSha256() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+
+	/**
+	 * @return the DoubleSha256 belonging to the calling thread
+	 */
+	static DoubleSha256 get() { return LOCAL.get(); }
+
+	/**
+	 * Double sha256 hashes len bytes of in starting at off
+	 * and writes the 32 byte hash into out at outOff. out
+	 * may be the same array as in.
+	 */
+	void hash(byte[] in, int off, int len, byte[] out, int outOff) {
+		digest.update(in, off, len);
+		finish(out, outOff);
+	}
+
+	/**
+	 * Double sha256 hashes the 32 byte hash at aOff in a
+	 * followed by the 32 byte hash at bOff in b and writes
+	 * the result into out at outOff. Any of the arrays may
+	 * be the same array.
+	 */
+	void hashPair(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff) {
+		digest.update(a, aOff, HASH_LEN);
+		digest.update(b, bOff, HASH_LEN);
+		finish(out, outOff);
+	}
+
+	/**
+	 * Feeds more bytes into the hash currently being
+	 * built, the hash is completed with finish().
+	 */
+	void update(byte[] in, int off, int len) { digest.update(in, off, len); }
+
+	/**
+	 * Feeds the remaining bytes of in into the hash 
+	 * currently being built. The position of in is moved
+	 * up to its limit.
+	 */
+	void update(ByteBuffer in) { digest.update(in); }
+	
+	/**
+	 * Completes the hash of everything given to update()
+	 * and writes it into out at outOff.
+	 */
+	void finish(byte[] out, int outOff) {
+		try {
+			digest.digest(first, 0, HASH_LEN);        // first pass
+			digest.update(first, 0, HASH_LEN);
+			digest.digest(out, outOff, HASH_LEN);     // second pass straight into the output
+		} catch (DigestException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package MerkleTreeVerify;
+
+
+/**
+ * This interface is a way of double sha256 hashing a
+ * whole level of a Merkle Tree at once. Every pair of 
+ * neighbouring hashes in a level is one 64 byte message
+ * and all of them are independent, so a backend is free 
+ * to hash several messages side by side. 
+ * 
+ * HashBackends picks the backend MerkleTree uses.
+ */
+public interface HashBackend {
+	
+	/**
+	 * Double sha256 hashes count 64 byte messages laid out
+	 * one after the other from srcOff in src, writing the 
+	 * 32 byte hashes one after the other from dstOff in dst.
+	 * dst may be src as long as dstOff is no bigger than 
+	 * srcOff, every message is read before its hash (or a
+	 * later one) is written.
+	 * 
+	 * @param src the messages
+	 * @param srcOff where the first message starts
+	 * @param count the number of messages
+	 * @param dst where the hashes go
+	 * @param dstOff where the first hash goes
+	 */
+	void hashLevel(byte[] src, int srcOff, int count, byte[] dst, int dstOff);
+	
+	/**
+	 * @return a short name for the backend
+	 */
+	String name();
+}
@@ -0,0 +1,105 @@
+package MerkleTreeVerify;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * This class picks the HashBackend MerkleTree hashes 
+ * its levels with. The backend is named by the system 
+ * property merkle.hash.backend:
+ * <pre>
+ *   scalar          one message at a time through the JDK digest (the default)
+ *   multibuffer     8 messages in lockstep lanes
+ *   multibuffer-4   4 messages in lockstep lanes
+ * </pre>
+ * The JDK digest runs on the SHA instructions of CPUs 
+ * that have them, which lockstep lanes in plain Java can't
+ * beat, so it stays the default. The chosen backend is 
+ * cross checked against the JDK's MessageDigest when this
+ * class loads and the scalar backend is used instead if 
+ * the two disagree.
+ */
+public final class HashBackends {
+	/** the system property naming the backend */
+	public static final String PROPERTY = "merkle.hash.backend";
+	
+	private static final HashBackend SCALAR = new ScalarHashBackend();
+	private static final HashBackend SELECTED = select(System.getProperty(PROPERTY, "scalar"));
+	
+	private HashBackends() { }
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * @return the backend MerkleTree uses
+	 */
+	public static HashBackend get() { return SELECTED; }
+	
+	/**
+	 * @param name scalar, multibuffer or multibuffer-4
+	 * @return the named backend, not self tested
+	 * @throws IllegalArgumentException for any other name
+	 */
+	public static HashBackend byName(String name) {
+		if (name.equals("scalar")) {
+			return SCALAR;
+		} else if (name.equals("multibuffer") || name.equals("multibuffer-8")) {
+			return MultiBufferSha256.forLanes(8);
+		} else if (name.equals("multibuffer-4")) {
+			return MultiBufferSha256.forLanes(4);
+		}
+		throw new IllegalArgumentException("unknown hash backend: " + name);
+	}
+	
+	/**
+	 * Checks a backend against the JDK's MessageDigest on
+	 * random levels of every size from 0 to 40 messages,
+	 * hashing both into a separate array and in place.
+	 * 
+	 * @param backend the backend to check
+	 * @return true if every hash matched
+	 */
+	public static boolean selfTest(HashBackend backend) {
+		MessageDigest sha256;
+		try {
+			sha256 = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		Random random = new Random(42);
+		int msgLen = 2 * MerkleTree.HASH_LEN;
+		
+		for (int count = 0; count <= 40; ++count) {
+			byte[] src = new byte[count * msgLen];
+			random.nextBytes(src);
+			byte[] expected = new byte[count * MerkleTree.HASH_LEN];
+			for (int i = 0; i < count; ++i) {
+				sha256.update(src, i * msgLen, msgLen);
+				byte[] hash = sha256.digest(sha256.digest());
+				System.arraycopy(hash, 0, expected, i * MerkleTree.HASH_LEN, MerkleTree.HASH_LEN);
+			}
+			
+			byte[] dst = new byte[expected.length];
+			backend.hashLevel(src, 0, count, dst, 0);
+			backend.hashLevel(src, 0, count, src, 0);      // in place
+			if (!Arrays.equals(dst, expected) || !Arrays.equals(Arrays.copyOf(src, expected.length), expected)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	private static HashBackend select(String name) {
+		HashBackend backend;
+		try {
+			backend = byName(name);
+		} catch (IllegalArgumentException e) {
+			return SCALAR;                               // an unknown name falls back to the default
+		}
+		return (backend == SCALAR || selfTest(backend)) ? backend : SCALAR;
+	}
+}
@@ -0,0 +1,421 @@
+package MerkleTreeVerify;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * This class checks a chain of 80 byte block headers so
+ * the merkle root of a block can be trusted to belong to
+ * the chain and not just to the page it came from. Each
+ * header must:
+ * <ul>
+ *   <li>name the hash of the header before it as its previous block</li>
+ *   <li>have a valid nBits target no easier than the proof of work limit</li>
+ *   <li>hash to no more than its nBits target</li>
+ * </ul>
+ * Headers are taken in batches. The double sha256 of every
+ * header and the proof of work check are done on a
+ * ForkJoinPool, then the links are followed on the calling
+ * thread, which is a 32 byte compare per header. The first
+ * bad header stops the chain, getProblem() tells why.
+ * Difficulty retargeting is not checked, only that each
+ * header meets the target it gives.
+ *
+ * The hash and merkle root of every accepted header are
+ * kept, 64 bytes a header, so verifyBlock() can check the
+ * transactions of a block against the header at its height.
+ */
+public class HeaderChainVerifier {
+	public static final int HEADER_LEN = RawBlock.HEADER_LEN;
+	/** the proof of work limit of the main network */
+	public static final int MAIN_POW_LIMIT = 0x1d00ffff;
+	/** the number of headers verify(InputStream) reads at a time */
+	public static final int BATCH = 2000;
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	private static final int PREV_OFFSET = 4;      // where in a header the previous block hash is
+	private static final int ROOT_OFFSET = 36;     // where in a header the merkle root is
+	private static final int BITS_OFFSET = 72;     // where in a header nBits is
+	private static final int CUTOFF = 256;         // the most headers hashed by one task
+
+	/**
+	 * Why a header was refused.
+	 */
+	public enum Failure {
+		/** the header names a different previous block */
+		BROKEN_LINK,
+		/** nBits is negative, zero, overflows or is easier than the limit */
+		BAD_TARGET,
+		/** the header hashes to more than its target */
+		BAD_PROOF_OF_WORK
+	}
+
+	private final ForkJoinPool pool;            // the pool headers are hashed on
+	private final byte[] powLimit;              // the easiest target allowed, LITTLE-ENDIAN
+	private final int firstHeight;              // the height of the first header taken
+	private final byte[] tip;                   // the hash of the last accepted header
+	private byte[] hashes = new byte[0];        // the hash of every accepted header
+	private byte[] roots = new byte[0];         // the merkle root of every accepted header
+	private int count;                          // the number of accepted headers
+	private Problem problem;                    // the first bad header, null if none
+
+
+	//----------------Nested Problem Class-----------------------------------------//
+	/**
+	 * The first header the chain refused.
+	 */
+	public static final class Problem {
+		private final int height;
+		private final Failure failure;
+		private final String blockHash;
+
+		Problem(int height, Failure failure, String blockHash) {
+			this.height = height;
+			this.failure = failure;
+			this.blockHash = blockHash;
+		}
+
+		/** @return the height the header would have had */
+		public int getHeight() { return height; }
+
+		/** @return why it was refused */
+		public Failure getFailure() { return failure; }
+
+		/** @return the hex hash of the header */
+		public String getBlockHash() { return blockHash; }
+
+		@Override
+		public String toString() { return failure + " at height " + height + " (" + blockHash + ")"; }
+	}
+	//------------End Nested Problem Class------------------------------------//
+
+
+	//----------------Constructors-------------------------------------------//
+	/**
+	 * Constructs a verifier for the main network that
+	 * starts with the genesis header, hashing on the
+	 * common ForkJoinPool.
+	 */
+	public HeaderChainVerifier() {
+		this(null, 0, MAIN_POW_LIMIT, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs a verifier that carries on from a header
+	 * already trusted.
+	 *
+	 * @param tipHash the hex hash of the trusted header, or
+	 * null to start with a genesis header
+	 * @param firstHeight the height of the first header
+	 * that will be given
+	 * @param powLimitBits the easiest target allowed, in
+	 * nBits form
+	 * @param pool the pool to hash headers on
+	 */
+	public HeaderChainVerifier(String tipHash, int firstHeight, int powLimitBits, ForkJoinPool pool) {
+		powLimit = new byte[HASH_LEN];
+		if (!expandTarget(powLimitBits, powLimit, 0)) {
+			throw new IllegalArgumentException("bad proof of work limit: " + Integer.toHexString(powLimitBits));
+		}
+		tip = new byte[HASH_LEN];                   // all zero before a genesis header
+		if (tipHash != null) {
+			MerkleTree.decodeTxid(tipHash, tip, 0);
+		}
+		this.firstHeight = firstHeight;
+		this.pool = pool;
+	}
+	//----------------End Constructors---------------------------------------//
+
+
+	//----------------Public Methods-----------------------------------------//
+
+	/**
+	 * Takes the next headers of the chain.
+	 *
+	 * @param headers the headers, 80 bytes apiece
+	 * @param off where in headers the first one starts
+	 * @param n the number of headers
+	 * @return the number of headers accepted, fewer than n
+	 * if one was refused
+	 */
+	public synchronized int add(byte[] headers, int off, int n) {
+		if (problem != null || n == 0) {
+			return 0;
+		}
+		byte[] batch = new byte[n * HASH_LEN];
+		Failure[] failures = new Failure[n];
+		HashTask task = new HashTask(headers, off, batch, failures, powLimit, 0, n);
+		if (n > CUTOFF) {
+			pool.invoke(task);
+		} else {
+			task.compute();
+		}
+		Metrics.registry().increment(Metrics.Counter.HASHES, n);
+
+		ensureCapacity(count + n);
+		for (int i = 0; i < n; ++i) {
+			int header = off + i * HEADER_LEN;
+			Failure failure = failures[i];
+			if (!Arrays.equals(headers, header + PREV_OFFSET, header + PREV_OFFSET + HASH_LEN, tip, 0, HASH_LEN)) {
+				failure = Failure.BROKEN_LINK;        // a broken link is the first thing wrong with a header
+			}
+			if (failure != null) {
+				problem = new Problem(firstHeight + count, failure, MerkleTree.encodeTxid(batch, i * HASH_LEN));
+				return i;
+			}
+			System.arraycopy(batch, i * HASH_LEN, tip, 0, HASH_LEN);
+			System.arraycopy(batch, i * HASH_LEN, hashes, count * HASH_LEN, HASH_LEN);
+			System.arraycopy(headers, header + ROOT_OFFSET, roots, count * HASH_LEN, HASH_LEN);
+			++count;
+		}
+		return n;
+	}
+
+	/**
+	 * Takes headers from a stream, BATCH at a time, until
+	 * the stream ends or a header is refused.
+	 *
+	 * @param in the headers back to back, 80 bytes apiece
+	 * @return the number of headers accepted
+	 * @throws IOException if reading fails or the stream
+	 * ends part way through a header
+	 */
+	public long verify(InputStream in) throws IOException {
+		byte[] buf = new byte[BATCH * HEADER_LEN];
+		long accepted = 0;
+		while (true) {
+			int len = in.readNBytes(buf, 0, buf.length);
+			if (len % HEADER_LEN != 0) {
+				accepted += add(buf, 0, len / HEADER_LEN);
+				if (problem == null) {
+					throw new IOException("stream ends part way through a header after " + accepted + " headers");
+				}
+				return accepted;
+			}
+			int n = len / HEADER_LEN;
+			int added = add(buf, 0, n);
+			accepted += added;
+			if (added < n || len < buf.length) {
+				return accepted;
+			}
+		}
+	}
+
+	/**
+	 * Checks the transactions of a block against the
+	 * merkle root of the accepted header at its height.
+	 * The block is checked with BlockVerify.verify first.
+	 *
+	 * @param blk the block
+	 * @param height the height of the block
+	 * @return MATCH if the transactions hash to the header's
+	 * root, MISMATCH if not, NOT_IN_CHAIN if there is no
+	 * accepted header at the height or it has another hash,
+	 * or why the block could not be checked
+	 */
+	public VerificationResult verifyBlock(BlockSource blk, int height) {
+		return verifyBlock(BlockVerify.verify(blk), height);
+	}
+
+	/**
+	 * The same as verifyBlock(blk, blk.getBlockNumber()),
+	 * but a block that gives no height, like one from 
+	 * before BIP 34, is looked up by its hash among the
+	 * accepted headers instead.
+	 *
+	 * @param blk the block
+	 * @return the result, see verifyBlock(BlockSource, int)
+	 */
+	public VerificationResult verifyBlock(BlockSource blk) {
+		VerificationResult own = BlockVerify.verify(blk);
+		int height = own.blockNumber();
+		if (height < 0 && own.blockHash() != null) {
+			height = heightOf(own.blockHash());
+			if (height < 0) {
+				return new VerificationResult(VerificationResult.Status.NOT_IN_CHAIN, own.blockNumber(), own.blockHash(),
+				                              own.computedRoot(), own.expectedRoot(),
+				                              "no accepted header has hash " + own.blockHash());
+			}
+		}
+		return verifyBlock(own, height);
+	}
+
+	/** @return the number of accepted headers */
+	public synchronized int getHeaderCount() { return count; }
+
+	/** @return the height of the last accepted header, firstHeight - 1 if there is none */
+	public synchronized int getHeight() { return firstHeight + count - 1; }
+
+	/** @return the hex hash of the last accepted header, or the tip it started from */
+	public synchronized String getTipHash() { return MerkleTree.encodeTxid(tip, 0); }
+
+	/** @return the first header refused, or null if none was */
+	public synchronized Problem getProblem() { return problem; }
+
+	/**
+	 * Expands an nBits compact target into a 256 bit number.
+	 *
+	 * @param bits the compact target
+	 * @param dst the array to write the 32 byte LITTLE-ENDIAN target into
+	 * @param off where in dst to write it
+	 * @return false if the target is negative, zero or
+	 * more than 256 bits
+	 */
+	public static boolean expandTarget(int bits, byte[] dst, int off) {
+		Arrays.fill(dst, off, off + HASH_LEN, (byte) 0);
+		int exponent = bits >>> 24;
+		int mantissa = bits & 0x007fffff;
+		if (mantissa == 0 || (bits & 0x00800000) != 0) {
+			return false;                               // zero or negative
+		}
+		if (exponent <= 3) {
+			mantissa >>>= 8 * (3 - exponent);
+			if (mantissa == 0) {
+				return false;
+			}
+			exponent = 3;
+		}
+		for (int i = 0; i < 3; ++i) {
+			int b = (mantissa >>> (8 * i)) & 0xff;
+			int pos = exponent - 3 + i;
+			if (pos >= HASH_LEN) {
+				if (b != 0) {
+					return false;                       // overflows 256 bits
+				}
+			} else {
+				dst[off + pos] = (byte) b;
+			}
+		}
+		return true;
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * Checks the result of BlockVerify.verify against the
+	 * accepted header at height.
+	 */
+	private VerificationResult verifyBlock(VerificationResult own, int height) {
+		if (own.status() != VerificationResult.Status.MATCH && own.status() != VerificationResult.Status.MISMATCH) {
+			return own;
+		}
+		String headerHash;
+		String headerRoot;
+		synchronized (this) {
+			int index = height - firstHeight;
+			if (index < 0 || index >= count) {
+				return new VerificationResult(VerificationResult.Status.NOT_IN_CHAIN, own.blockNumber(), own.blockHash(),
+				                              own.computedRoot(), own.expectedRoot(), "no header at height " + height);
+			}
+			headerHash = MerkleTree.encodeTxid(hashes, index * HASH_LEN);
+			headerRoot = MerkleTree.encodeTxid(roots, index * HASH_LEN);
+		}
+		if (own.blockHash() != null && !own.blockHash().equalsIgnoreCase(headerHash)) {
+			return new VerificationResult(VerificationResult.Status.NOT_IN_CHAIN, own.blockNumber(), own.blockHash(),
+			                              own.computedRoot(), own.expectedRoot(),
+			                              "the header at height " + height + " is " + headerHash);
+		}
+		boolean match = headerRoot.equals(own.computedRoot());
+		return new VerificationResult(match ? VerificationResult.Status.MATCH : VerificationResult.Status.MISMATCH,
+		                              height, headerHash, own.computedRoot(), headerRoot,
+		                              match ? null : "the header root differs");
+	}
+
+	/**
+	 * Finds an accepted header by its hash, searching back
+	 * from the tip since recent blocks are asked about most.
+	 *
+	 * @param blockHash the hex hash of the header
+	 * @return its height, or -1 if no accepted header has it
+	 */
+	private synchronized int heightOf(String blockHash) {
+		if (!MerkleTree.isTxid(blockHash)) {
+			return -1;
+		}
+		byte[] hash = new byte[HASH_LEN];
+		MerkleTree.decodeTxid(blockHash, hash, 0);
+		for (int i = count - 1; i >= 0; --i) {
+			if (Arrays.equals(hashes, i * HASH_LEN, (i + 1) * HASH_LEN, hash, 0, HASH_LEN)) {
+				return firstHeight + i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if the LITTLE-ENDIAN number at aOff in
+	 * a is no more than the one at bOff in b
+	 */
+	private static boolean atMost(byte[] a, int aOff, byte[] b, int bOff) {
+		for (int i = HASH_LEN - 1; i >= 0; --i) {        // the last byte is the most significant
+			int x = a[aOff + i] & 0xff;
+			int y = b[bOff + i] & 0xff;
+			if (x != y) {
+				return x < y;
+			}
+		}
+		return true;
+	}
+
+	private void ensureCapacity(int headers) {
+		if (headers * HASH_LEN > hashes.length) {
+			int capacity = Math.max(headers, 2 * hashes.length / HASH_LEN);
+			hashes = Arrays.copyOf(hashes, capacity * HASH_LEN);
+			roots = Arrays.copyOf(roots, capacity * HASH_LEN);
+		}
+	}
+
+
+	//----------------Nested HashTask Class-----------------------------------------//
+	/**
+	 * Hashes a range of headers and checks their proof of
+	 * work, splitting the range across the pool.
+	 */
+	private static class HashTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final byte[] headers;
+		private final int off;
+		private final byte[] out;
+		private final Failure[] failures;
+		private final byte[] powLimit;
+		private final int from;
+		private final int to;
+
+		HashTask(byte[] headers, int off, byte[] out, Failure[] failures, byte[] powLimit, int from, int to) {
+			this.headers = headers;
+			this.off = off;
+			this.out = out;
+			this.failures = failures;
+			this.powLimit = powLimit;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CUTOFF) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new HashTask(headers, off, out, failures, powLimit, from, mid),
+				          new HashTask(headers, off, out, failures, powLimit, mid, to));
+				return;
+			}
+			DoubleSha256 sha = DoubleSha256.get();
+			byte[] target = new byte[HASH_LEN];
+			for (int i = from; i < to; ++i) {
+				int header = off + i * HEADER_LEN;
+				sha.hash(headers, header, HEADER_LEN, out, i * HASH_LEN);
+				int bits = (headers[header + BITS_OFFSET] & 0xff) | (headers[header + BITS_OFFSET + 1] & 0xff) << 8
+				         | (headers[header + BITS_OFFSET + 2] & 0xff) << 16 | (headers[header + BITS_OFFSET + 3] & 0xff) << 24;
+				if (!expandTarget(bits, target, 0) || !atMost(target, 0, powLimit, 0)) {
+					failures[i] = Failure.BAD_TARGET;
+				} else if (!atMost(out, i * HASH_LEN, target, 0)) {
+					failures[i] = Failure.BAD_PROOF_OF_WORK;
+				}
+			}
+		}
+	}
+	//------------End Nested HashTask Class------------------------------------//
+}
@@ -0,0 +1,114 @@
+package MerkleTreeVerify;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * This class is a lock free histogram of non negative 
+ * long values in the style of HdrHistogram. Each power of
+ * two is split into 16 linear sub buckets, so recorded 
+ * values come back within about 6% and the whole range of
+ * a long fits in 1024 counters. Recording is one atomic
+ * increment plus the running count, sum and max, which
+ * are striped like the metrics counters so many workers
+ * recording at once don't fight over one cache line.
+ */
+public class Histogram {
+	private static final int SUB_BITS = 4;                    // 16 sub buckets per power of two
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+	
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Records a value, negative values are taken as zero.
+	 * 
+	 * @param value the value
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+	
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the value at that percentile, rounded up to
+	 * the top of its bucket (but never above the max), or
+	 * 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = count.sum();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); ++i) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueIn(i), max.get());
+			}
+		}
+		return max.get();
+	}
+	
+	/** @return the number of values recorded */
+	public long getCount() { return count.sum(); }
+	
+	/** @return the sum of the values recorded */
+	public long getSum() { return sum.sum(); }
+	
+	/** @return the largest value recorded */
+	public long getMax() { return max.get(); }
+	
+	/** @return the mean of the values recorded, 0 if there are none */
+	public double getMean() {
+		long n = count.sum();
+		return (n == 0) ? 0 : (double) sum.sum() / n;
+	}
+	
+	/**
+	 * Forgets every value. Values recorded while this 
+	 * runs may be partly kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); ++i) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;                                          // small values get a bucket each
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);                // the highest set bit
+		int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1); // the next four bits
+		return ((exp - SUB_BITS + 1) << SUB_BITS) | sub;
+	}
+	
+	private static long highestValueIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exp = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+		long sub = bucket & (SUB_BUCKETS - 1);
+		long low = (1L << exp) | (sub << (exp - SUB_BITS));
+		return low + (1L << (exp - SUB_BITS)) - 1;
+	}
+}
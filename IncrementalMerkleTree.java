@@ -0,0 +1,141 @@
+package MerkleTreeVerify;
+
+
+/**
+ * This class is an append only Merkle Tree for sets of
+ * transactions that grow one at a time, like a mempool or
+ * a candidate block. Rather than keeping every leaf it 
+ * keeps a frontier holding the root of each complete 
+ * subtree along the right edge of the tree, one per set
+ * bit of the leaf count. Appending a leaf and getting the
+ * root each take O(log n) hashes and never touch the rest
+ * of the tree.
+ * 
+ * The root is the same one MerkleTree computes for the 
+ * same leaves, an odd trailing node is hashed with itself
+ * on every level.
+ */
+public class IncrementalMerkleTree {
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	private static final int MAX_HEIGHT = 32;                    // enough levels for any int leaf count
+	
+	private final byte[] frontier = new byte[MAX_HEIGHT * HASH_LEN]; // the complete subtree root for each height
+	private final byte[] node = new byte[HASH_LEN];              // scratch space for the hash being carried up
+	private final byte[] root = new byte[HASH_LEN];              // the root of the current leaves
+	private int size;                                            // the number of leaves appended
+	private String merkleRoot;                                   // the hex root, null until asked for
+	
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Appends a transaction and returns the new
+	 * merkle root.
+	 * 
+	 * @param txid the hex transaction ID
+	 * @return the merkle root including txid
+	 */
+	public String append(String txid) {
+		MerkleTree.decodeTxid(txid, node, 0);
+		appendNode();
+		return getMerkleRoot();
+	}
+	
+	/**
+	 * Appends a leaf hash without working out the
+	 * root, useful when adding many leaves at once.
+	 * 
+	 * @param hash an array holding a LITTLE-ENDIAN leaf hash
+	 * @param off where in hash the leaf starts
+	 */
+	public void append(byte[] hash, int off) {
+		System.arraycopy(hash, off, node, 0, HASH_LEN);
+		appendNode();
+	}
+	
+	/**
+	 * @return the merkle root of every leaf appended so
+	 * far, or null if there are none
+	 */
+	public String getMerkleRoot() {
+		if (merkleRoot == null && size > 0) {
+			computeRoot();
+			merkleRoot = MerkleTree.encodeTxid(root, 0);
+		}
+		return merkleRoot;
+	}
+	
+	/**
+	 * Copies the LITTLE-ENDIAN merkle root into dst.
+	 * 
+	 * @param dst the array to copy into
+	 * @param off where in dst to copy to
+	 * @throws IllegalStateException if there are no leaves
+	 */
+	public void getMerkleRoot(byte[] dst, int off) {
+		if (size == 0) {
+			throw new IllegalStateException("the tree is empty");
+		}
+		computeRoot();
+		System.arraycopy(root, 0, dst, off, HASH_LEN);
+	}
+	
+	/**
+	 * @return the number of leaves in this tree
+	 */
+	public int size() { return size; }
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	/**
+	 * Adds the leaf in node to the frontier. Like adding
+	 * one to a binary counter, every complete subtree the
+	 * new leaf finishes is merged into the next height up.
+	 */
+	private void appendNode() {
+		if (size == Integer.MAX_VALUE) {
+			throw new IllegalStateException("the tree is full");
+		}
+		DoubleSha256 sha = DoubleSha256.get();
+		int h = 0;
+		while (((size >>> h) & 1) == 1) {          // a waiting left sibling at this height
+			sha.hashPair(frontier, h * HASH_LEN, node, 0, node, 0);
+			++h;
+		}
+		System.arraycopy(node, 0, frontier, h * HASH_LEN, HASH_LEN);
+		++size;
+		merkleRoot = null;
+	}
+	
+	/**
+	 * Works out the root into root. Going up from the 
+	 * leaves, a partial node is carried along the right 
+	 * edge. At each height it is either the right sibling
+	 * of the complete subtree waiting there or, when there 
+	 * is none, an odd last node hashed with itself.
+	 */
+	private void computeRoot() {
+		DoubleSha256 sha = DoubleSha256.get();
+		boolean carrying = false;                  // whether root holds a partial node
+		
+		for (int h = 0; ; ++h) {
+			if ((long) size <= (1L << h)) {        // one node left on this level, the root
+				if (!carrying) {
+					System.arraycopy(frontier, h * HASH_LEN, root, 0, HASH_LEN);
+				}
+				return;
+			}
+			if (((size >>> h) & 1) == 1) {         // a complete subtree is waiting at this height
+				int left = h * HASH_LEN;
+				if (carrying) {
+					sha.hashPair(frontier, left, root, 0, root, 0);
+				} else {
+					sha.hashPair(frontier, left, frontier, left, root, 0);
+					carrying = true;
+				}
+			} else if (carrying) {                 // the partial node is an odd last node
+				sha.hashPair(root, 0, root, 0, root, 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,376 @@
+package MerkleTreeVerify;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class finds the leaves where two Merkle Trees of
+ * the same block disagree, for when the computed root is
+ * not the root the block gave. The trees are walked down
+ * from the top and only subtrees whose hashes differ are
+ * entered, so k bad transactions in a block of n are found
+ * in about k*log2(n) hash comparisons instead of n.
+ *
+ * One tree is the actual tree, usually the one built from
+ * the transactions we have, and the other is the expected
+ * tree, from a peer or a MerkleLevelStore. Every leaf index
+ * that disagrees is reported as one Difference:
+ * <ul>
+ *   <li>WRONG, the two leaves at the index are different transactions</li>
+ *   <li>REORDERED, the actual leaf is in the expected tree at another index</li>
+ *   <li>MISSING, the expected tree has a leaf at an index past the end of the actual tree</li>
+ *   <li>EXTRA, the actual tree has a leaf at an index past the end of the expected tree</li>
+ * </ul>
+ */
+public class MerkleDiff {
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	
+	private final List<Difference> differences;   // the leaves that disagree, by index
+	private final int comparisons;                 // the number of hashes compared to find them
+	
+	
+	/**
+	 * The ways a leaf can disagree.
+	 */
+	public enum Kind { WRONG, REORDERED, MISSING, EXTRA }
+	
+	
+	//---------------Nested Difference Class----------------------------------//
+	
+	/**
+	 * One leaf index where the trees disagree.
+	 */
+	public static final class Difference {
+		private final int index;          // the leaf index
+		private final Kind kind;          // how it disagrees
+		private final int otherIndex;     // where the leaf is in the expected tree, for REORDERED
+		
+		Difference(int index, Kind kind, int otherIndex) {
+			this.index = index;
+			this.kind = kind;
+			this.otherIndex = otherIndex;
+		}
+		
+		/** @return the leaf index, in the actual tree unless MISSING */
+		public int getIndex() { return index; }
+		
+		/** @return how the leaf disagrees */
+		public Kind getKind() { return kind; }
+		
+		/** @return the index of the leaf in the expected tree when REORDERED, otherwise -1 */
+		public int getOtherIndex() { return otherIndex; }
+		
+		@Override
+		public String toString() {
+			return (kind == Kind.REORDERED) ? kind + " " + index + "->" + otherIndex : kind + " " + index;
+		}
+	}
+	//------------End Nested Difference Class------------------------------------//
+	
+	
+	//---------------Nested Levels Classes----------------------------------//
+	
+	/**
+	 * The levels of one side of the diff.
+	 */
+	private interface Levels {
+		int size();
+		int depth();
+		void getHash(int level, int index, byte[] dst, int off);
+	}
+	
+	/**
+	 * Levels held in arrays, leaves first, as MerkleTree.getLevels() gives them.
+	 */
+	private static final class ArrayLevels implements Levels {
+		private final byte[][] levels;
+		private final int size;
+		
+		ArrayLevels(byte[][] levels, int size) {
+			this.levels = (size == 0) ? new byte[0][] : levels;
+			this.size = size;
+			int count = size;
+			for (int level = 0; level < this.levels.length; ++level) {   // a peer's levels are not trusted
+				if (levels[level] == null || levels[level].length < count * HASH_LEN) {
+					throw new IllegalArgumentException("level " + level + " is short of " + count + " hashes");
+				}
+				count = (count + 1) / 2;
+			}
+			if (size > 0 && levels.length != depthOf(size) + 1) {
+				throw new IllegalArgumentException(levels.length + " levels for " + size + " leaves");
+			}
+		}
+		
+		@Override
+		public int size() { return size; }
+		
+		@Override
+		public int depth() { return levels.length - 1; }
+		
+		@Override
+		public void getHash(int level, int index, byte[] dst, int off) {
+			System.arraycopy(levels[level], index * HASH_LEN, dst, off, HASH_LEN);
+		}
+	}
+	
+	/**
+	 * Levels read out of a MerkleLevelStore.
+	 */
+	private static final class StoreLevels implements Levels {
+		private final MerkleLevelStore store;
+		
+		StoreLevels(MerkleLevelStore store) {
+			this.store = store;
+		}
+		
+		@Override
+		public int size() { return store.size(); }
+		
+		@Override
+		public int depth() { return store.levels() - 1; }
+		
+		@Override
+		public void getHash(int level, int index, byte[] dst, int off) {
+			store.getHash(level, index, dst, off);
+		}
+	}
+	//------------End Nested Levels Classes------------------------------------//
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	private MerkleDiff(List<Difference> differences, int comparisons) {
+		this.differences = Collections.unmodifiableList(differences);
+		this.comparisons = comparisons;
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Compares two trees.
+	 *
+	 * @param actual the tree to check
+	 * @param expected the tree it should match
+	 * @return the leaves that disagree
+	 */
+	public static MerkleDiff compare(MerkleTree actual, MerkleTree expected) {
+		return compare(levelsOf(actual), levelsOf(expected));
+	}
+	
+	/**
+	 * Compares a tree with the level hashes of a peer.
+	 *
+	 * @param actual the tree to check
+	 * @param expectedLevels the peer's levels, leaves first
+	 * and root last, each packed 32 bytes a hash in
+	 * LITTLE-ENDIAN order
+	 * @param expectedLeaves the number of leaves the peer has
+	 * @return the leaves that disagree
+	 * @throws IllegalArgumentException if the levels are
+	 * not the shape of a tree of expectedLeaves leaves
+	 */
+	public static MerkleDiff compare(MerkleTree actual, byte[][] expectedLevels, int expectedLeaves) {
+		return compare(levelsOf(actual), new ArrayLevels(expectedLevels, expectedLeaves));
+	}
+	
+	/**
+	 * Compares a tree with one kept in a MerkleLevelStore.
+	 *
+	 * @param actual the tree to check
+	 * @param expected the stored tree it should match
+	 * @return the leaves that disagree
+	 */
+	public static MerkleDiff compare(MerkleTree actual, MerkleLevelStore expected) {
+		return compare(levelsOf(actual), new StoreLevels(expected));
+	}
+	
+	/** @return true if the trees are the same */
+	public boolean isEmpty() { return differences.isEmpty(); }
+	
+	/** @return the leaves that disagree, ordered by index */
+	public List<Difference> getDifferences() { return differences; }
+	
+	/**
+	 * @param kind a kind of difference
+	 * @return the indices of the leaves that disagree that way
+	 */
+	public int[] getIndices(Kind kind) {
+		int n = 0;
+		for (Difference d : differences) {
+			if (d.kind == kind) {
+				++n;
+			}
+		}
+		int[] indices = new int[n];
+		n = 0;
+		for (Difference d : differences) {
+			if (d.kind == kind) {
+				indices[n++] = d.index;
+			}
+		}
+		return indices;
+	}
+	
+	/** @return the number of hashes compared to find the differences */
+	public int getComparisons() { return comparisons; }
+	
+	@Override
+	public String toString() { return differences.toString(); }
+	
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	private static Levels levelsOf(MerkleTree tree) {
+		return new ArrayLevels(tree.getLevels(), tree.size());
+	}
+	
+	private static int depthOf(int size) {
+		int depth = 0;
+		for (int n = size; n > 1; n = (n + 1) / 2) {
+			++depth;
+		}
+		return depth;
+	}
+	
+	/**
+	 * Walks both trees down from the highest level they
+	 * share and sorts the leaves that disagree.
+	 */
+	private static MerkleDiff compare(Levels actual, Levels expected) {
+		Walk walk = new Walk(actual, expected);
+		int top = (actual.size() == 0 || expected.size() == 0) ? Math.max(actual.depth(), expected.depth())
+		                                                       : Math.min(actual.depth(), expected.depth());
+		int nodes = Math.max(countAt(actual.size(), top), countAt(expected.size(), top));
+		for (int i = 0; i < nodes; ++i) {
+			walk.visit(top, i);
+		}
+		return new MerkleDiff(walk.classify(), walk.comparisons);
+	}
+	
+	/**
+	 * @return the number of hashes on a level of a tree
+	 * of size leaves, 0 for a level it does not have
+	 */
+	private static int countAt(int size, int level) {
+		return (size == 0 || level > 30) ? 0 : (int) ((size + (1L << level) - 1) >>> level);
+	}
+	
+	
+	//---------------Nested Walk Class----------------------------------//
+	
+	/**
+	 * The state of one top down walk.
+	 */
+	private static final class Walk {
+		private final Levels actual;
+		private final Levels expected;
+		private final byte[] a = new byte[HASH_LEN];   // the actual hash being compared
+		private final byte[] e = new byte[HASH_LEN];   // the expected hash being compared
+		private final List<Integer> changed = new ArrayList<Integer>();       // leaves on both sides that differ
+		private final List<int[]> actualOnly = new ArrayList<int[]>();        // leaf ranges only the actual tree has
+		private final List<int[]> expectedOnly = new ArrayList<int[]>();      // leaf ranges only the expected tree has
+		private int comparisons;
+		
+		Walk(Levels actual, Levels expected) {
+			this.actual = actual;
+			this.expected = expected;
+		}
+		
+		/**
+		 * Visits the node at index on level, which covers the
+		 * leaves from index << level on.
+		 */
+		void visit(int level, int index) {
+			int aCount = countAt(actual.size(), level);
+			int eCount = countAt(expected.size(), level);
+			int from = index << level;
+			if (index >= aCount) {                     // only the expected tree reaches this far
+				expectedOnly.add(new int[] {from, Math.min(from + (1 << level), expected.size())});
+				return;
+			}
+			if (index >= eCount) {                     // only the actual tree reaches this far
+				actualOnly.add(new int[] {from, Math.min(from + (1 << level), actual.size())});
+				return;
+			}
+			
+			actual.getHash(level, index, a, 0);
+			expected.getHash(level, index, e, 0);
+			++comparisons;
+			boolean same = Arrays.equals(a, e);
+			int aTo = Math.min(from + (1 << level), actual.size());
+			int eTo = Math.min(from + (1 << level), expected.size());
+			if (same && aTo == eTo) {                  // the same leaves under both, nothing to find here
+				return;
+			}
+			if (level == 0) {
+				changed.add(index);
+				return;
+			}
+			visit(level - 1, 2 * index);
+			visit(level - 1, 2 * index + 1);
+		}
+		
+		/**
+		 * Sorts the leaves found by the walk into kinds,
+		 * matching actual leaves to expected leaves that
+		 * also disagree to find the reordered ones.
+		 */
+		List<Difference> classify() {
+			Map<String, Integer> expectedLeaves = new HashMap<String, Integer>();
+			for (int index : changed) {
+				expectedLeaves.put(leaf(expected, index), index);
+			}
+			for (int[] range : expectedOnly) {
+				for (int index = range[0]; index < range[1]; ++index) {
+					expectedLeaves.put(leaf(expected, index), index);
+				}
+			}
+			
+			List<Difference> found = new ArrayList<Difference>();
+			boolean[] moved = new boolean[expected.size()];   // expected leaves an actual leaf was matched to
+			for (int index : changed) {
+				addActual(found, expectedLeaves, moved, index, Kind.WRONG);
+			}
+			for (int[] range : actualOnly) {
+				for (int index = range[0]; index < range[1]; ++index) {
+					addActual(found, expectedLeaves, moved, index, Kind.EXTRA);
+				}
+			}
+			for (int[] range : expectedOnly) {
+				for (int index = range[0]; index < range[1]; ++index) {
+					if (!moved[index]) {
+						found.add(new Difference(index, Kind.MISSING, -1));
+					}
+				}
+			}
+			Collections.sort(found, new Comparator<Difference>() {
+				@Override
+				public int compare(Difference x, Difference y) { return Integer.compare(x.index, y.index); }
+			});
+			return found;
+		}
+		
+		private void addActual(List<Difference> found, Map<String, Integer> expectedLeaves, boolean[] moved,
+		                       int index, Kind otherwise) {
+			Integer other = expectedLeaves.get(leaf(actual, index));
+			if (other != null && other != index) {
+				moved[other] = true;
+				found.add(new Difference(index, Kind.REORDERED, other));
+			} else {
+				found.add(new Difference(index, otherwise, -1));
+			}
+		}
+		
+		private String leaf(Levels side, int index) {
+			side.getHash(0, index, a, 0);
+			return MerkleTree.encodeTxid(a, 0);
+		}
+	}
+	//------------End Nested Walk Class------------------------------------//
+}
@@ -0,0 +1,220 @@
+package MerkleTreeVerify;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * This class stores every level of a Merkle Tree in a
+ * compact binary file and serves proofs from it through
+ * a memory mapping, so the levels of thousands of blocks
+ * can be kept on disk instead of on the heap and proofs 
+ * are read straight out of the page cache.
+ * 
+ * The file is laid out as:
+ * <pre>
+ *   magic      4 bytes  "MKLV"
+ *   version    int      1
+ *   leaves     int      the number of leaves
+ *   levels     int      the number of levels, leaves and root included
+ *   offsets    long[]   where each level starts, leaves first
+ *   hashes     the levels one after the other, 32 bytes per hash
+ * </pre>
+ * The header is BIG-ENDIAN and the hashes are LITTLE-ENDIAN
+ * like everywhere else in MerkleTree.
+ */
+public class MerkleLevelStore implements Closeable {
+	private static final int MAGIC = 0x4d4b4c56;     // "MKLV"
+	private static final int VERSION = 1;
+	private static final int HEADER_LEN = 16;         // magic, version, leaves and levels
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	
+	private final FileChannel channel;                // the open file
+	private final MappedByteBuffer map;               // the whole file mapped read only
+	private final int leaves;                         // the number of leaves
+	private final int[] counts;                       // the number of hashes in each level
+	private final long[] offsets;                     // where each level starts
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	private MerkleLevelStore(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long fileSize = channel.size();
+		if (fileSize > Integer.MAX_VALUE) {
+			throw new IOException("level store too large to map: " + fileSize + " bytes");
+		}
+		map = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+		
+		if (fileSize < HEADER_LEN || map.getInt(0) != MAGIC) {
+			throw new IOException("not a Merkle level store");
+		}
+		if (map.getInt(4) != VERSION) {
+			throw new IOException("unknown level store version " + map.getInt(4));
+		}
+		leaves = map.getInt(8);
+		int levels = map.getInt(12);
+		if (leaves < 1 || levels != levelCount(leaves) || HEADER_LEN + 8L * levels > fileSize) {
+			throw new IOException("corrupt level store header");
+		}
+		
+		counts = new int[levels];
+		offsets = new long[levels];
+		int count = leaves;
+		for (int i = 0; i < levels; ++i) {
+			counts[i] = count;
+			offsets[i] = map.getLong(HEADER_LEN + 8 * i);
+			if (offsets[i] < 0 || offsets[i] + (long) count * HASH_LEN > fileSize) {
+				throw new IOException("level " + i + " runs past the end of the level store");
+			}
+			count = (count + 1) / 2;
+		}
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Writes every level of tree to file, replacing it
+	 * if it exists.
+	 * 
+	 * @param tree the tree to store, not empty
+	 * @param file where to write it
+	 * @throws IOException if writing fails
+	 */
+	public static void write(MerkleTree tree, Path file) throws IOException {
+		byte[][] levels = tree.getLevels();
+		if (levels == null) {
+			throw new IllegalArgumentException("an empty tree has no levels to store");
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LEN + 8 * levels.length);
+		header.putInt(MAGIC).putInt(VERSION).putInt(tree.size()).putInt(levels.length);
+		long offset = header.capacity();
+		int count = tree.size();
+		for (int i = 0; i < levels.length; ++i) {
+			header.putLong(offset);
+			offset += (long) count * HASH_LEN;
+			count = (count + 1) / 2;
+		}
+		header.flip();
+		
+		FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		                                   StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			writeFully(out, header);
+			count = tree.size();
+			for (byte[] level : levels) {
+				writeFully(out, ByteBuffer.wrap(level, 0, count * HASH_LEN));   // a level array may have room to spare
+				count = (count + 1) / 2;
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Opens and maps a level store.
+	 * 
+	 * @param file the level store file
+	 * @return the open level store
+	 * @throws IOException if the file can't be read or
+	 * is not a level store
+	 */
+	public static MerkleLevelStore open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new MerkleLevelStore(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/** @return the number of leaves */
+	public int size() { return leaves; }
+	
+	/** @return the number of levels, leaves and root included */
+	public int levels() { return counts.length; }
+	
+	/**
+	 * @return the hex merkle root
+	 */
+	public String getMerkleRoot() {
+		byte[] root = new byte[HASH_LEN];
+		getHash(counts.length - 1, 0, root, 0);
+		return MerkleTree.encodeTxid(root, 0);
+	}
+	
+	/**
+	 * Copies one hash out of the mapping.
+	 * 
+	 * @param level the level, zero being the leaves
+	 * @param index the index of the hash in the level
+	 * @param dst the array to copy the LITTLE-ENDIAN hash into
+	 * @param off where in dst to copy to
+	 */
+	public void getHash(int level, int index, byte[] dst, int off) {
+		if (index < 0 || index >= counts[level]) {
+			throw new IndexOutOfBoundsException("no hash " + index + " in level " + level);
+		}
+		map.get((int) (offsets[level] + (long) index * HASH_LEN), dst, off, HASH_LEN);
+	}
+	
+	/**
+	 * Gets the inclusion proof of the leaf at index,
+	 * the same proof MerkleTree.getProof(index) gives.
+	 * 
+	 * @param index the leaf index of the transaction
+	 * @return the proof for that leaf
+	 */
+	public MerkleProof getProof(int index) {
+		if (index < 0 || index >= leaves) {
+			throw new IndexOutOfBoundsException("no leaf " + index + " in a tree of " + leaves);
+		}
+		int depth = counts.length - 1;
+		byte[] siblings = new byte[depth * HASH_LEN];
+		boolean[] siblingLeft = new boolean[depth];
+		
+		int pos = index;
+		for (int level = 0; level < depth; ++level) {
+			int sib = pos ^ 1;                     // the other hash of the pair
+			if (sib >= counts[level]) {            // an odd last hash was paired with itself
+				sib = pos;
+			}
+			getHash(level, sib, siblings, level * HASH_LEN);
+			siblingLeft[level] = (pos & 1) == 1;
+			pos >>>= 1;
+		}
+		return new MerkleProof(index, siblings, siblingLeft);
+	}
+	
+	/**
+	 * Closes the file. The mapping stays readable until
+	 * it is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException { channel.close(); }
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	/**
+	 * @return the number of levels in a tree of leaves leaves
+	 */
+	private static int levelCount(int leaves) {
+		int levels = 1;
+		for (int n = leaves; n > 1; n = (n + 1) / 2) {
+			++levels;
+		}
+		return levels;
+	}
+	
+	private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			out.write(buf);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package MerkleTreeVerify;
+import java.util.Arrays;
+
+
+/**
+ * This class holds a Merkle inclusion proof for one 
+ * transaction of a block. The proof is the path of 
+ * sibling hashes from the leaf up to the root along with
+ * a flag for every level telling whether the sibling 
+ * is on the left or the right. Checking a proof takes 
+ * one double sha256 per level, log2(n) in all, instead 
+ * of rebuilding the whole tree.
+ * 
+ * The sibling hashes are packed 32 bytes apiece in
+ * LITTLE-ENDIAN order, the same as inside MerkleTree.
+ */
+public class MerkleProof {
+	private final int index;            // the leaf index of the transaction this proof is for
+	private final byte[] siblings;      // the sibling hashes from the bottom level up
+	private final boolean[] siblingLeft;// true when the sibling of that level is the left hash
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	/**
+	 * Constructs a new MerkleProof.
+	 * 
+	 * @param index the leaf index the proof is for
+	 * @param siblings the packed sibling hashes, bottom level first
+	 * @param siblingLeft for each level whether the sibling is on the left
+	 */
+	MerkleProof(int index, byte[] siblings, boolean[] siblingLeft) {
+		if (siblings.length != siblingLeft.length * MerkleTree.HASH_LEN) {
+			throw new IllegalArgumentException("need one 32 byte sibling per flag");
+		}
+		this.index = index;
+		this.siblings = siblings;
+		this.siblingLeft = siblingLeft;
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Checks that txid is included under root using
+	 * proof. 
+	 * 
+	 * @param txid the hex transaction ID
+	 * @param proof the proof for txid
+	 * @param root the hex merkle root of the block
+	 * @return true if the proof leads from txid to root
+	 */
+	public static boolean verifyProof(String txid, MerkleProof proof, String root) {
+		byte[] leaf = new byte[MerkleTree.HASH_LEN];
+		byte[] expected = new byte[MerkleTree.HASH_LEN];
+		MerkleTree.decodeTxid(txid, leaf, 0);
+		MerkleTree.decodeTxid(root, expected, 0);
+		return proof.verify(leaf, 0, expected, 0);
+	}
+	
+	/**
+	 * @return the leaf index of the transaction
+	 */
+	public int getIndex() { return index; }
+	
+	/**
+	 * @return the number of levels in the proof
+	 */
+	public int depth() { return siblingLeft.length; }
+	
+	/**
+	 * @param level the level, zero being the leaves
+	 * @return the hex sibling hash at that level
+	 */
+	public String getSibling(int level) { return MerkleTree.encodeTxid(siblings, level * MerkleTree.HASH_LEN); }
+	
+	/**
+	 * @param level the level, zero being the leaves
+	 * @return true if the sibling at that level is
+	 * the left hash of the pair
+	 */
+	public boolean isSiblingLeft(int level) { return siblingLeft[level]; }
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof MerkleProof)) {
+			return false;
+		}
+		MerkleProof p = (MerkleProof) o;
+		return index == p.index && Arrays.equals(siblings, p.siblings) && Arrays.equals(siblingLeft, p.siblingLeft);
+	}
+	
+	@Override
+	public int hashCode() { return 31 * index + Arrays.hashCode(siblings); }
+	
+	//----------------Package Methods-------------------------------------------------//
+	
+	/**
+	 * Walks the proof up from the leaf hash at leafOff
+	 * in leaf and compares the result with the hash at
+	 * rootOff in root. Both are LITTLE-ENDIAN.
+	 */
+	boolean verify(byte[] leaf, int leafOff, byte[] root, int rootOff) {
+		byte[] current = new byte[MerkleTree.HASH_LEN];
+		System.arraycopy(leaf, leafOff, current, 0, MerkleTree.HASH_LEN);
+		DoubleSha256 sha = DoubleSha256.get();
+		
+		for (int level = 0; level < siblingLeft.length; ++level) {
+			int sib = level * MerkleTree.HASH_LEN;
+			if (siblingLeft[level]) {
+				sha.hashPair(siblings, sib, current, 0, current, 0);
+			} else {
+				sha.hashPair(current, 0, siblings, sib, current, 0);
+			}
+		}
+		
+		for (int i = 0; i < MerkleTree.HASH_LEN; ++i) {
+			if (current[i] != root[rootOff + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,7 +1,6 @@
 package MerkleTreeVerify;
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -12,181 +11,510 @@ import org.apache.commons.codec.digest.DigestUtils;
  * Merkle Root based on the tree with the transaction IDs
  * as leaves.
  * 
+ * The hashing itself works on one contiguous byte array
+ * that holds every hash of a level packed 32 bytes apiece,
+ * a whole level at a time is handed to the HashBackend
+ * chosen by HashBackends.
+ * The hashes are kept in LITTLE-ENDIAN (wire) order the 
+ * whole way up the tree, so the byte reversal bitcoin
+ * requires only happens when decoding the leaves and 
+ * encoding the root.
+ * 
+ * Very large trees can be hashed on a ForkJoinPool with
+ * parallel(), which splits every level that is bigger
+ * than a cutoff across the pool. Small trees and the 
+ * top levels of big trees still take the single threaded
+ * path. Both give exactly the same root.
+ * 
+ * The levels above the leaves are only kept once a
+ * proof is asked for with getProof(), they are rebuilt
+ * from the leaves the first time.
+ * 
  * @author Robert Pierce
  * date: 07/17/2015 
  * 
  * 
  */
 public class MerkleTree {
+	static final int HASH_LEN = DoubleSha256.HASH_LEN;   // the number of bytes in a hash
+	/** the most transactions a block can hold, a 4,000,000 weight block of 240 weight transactions */
+	public static final int MAX_TRANSACTIONS = 4000000 / 240;
+	
+	/** the default number of hashes in a level below which hashing stays on one thread */
+	public static final int DEFAULT_PARALLEL_CUTOFF = 4096;
+	
 	String merkleRoot;
-	Node[] nodeArr;
+	byte[] leafHashes;     // the leaf hashes packed 32 bytes apiece in LITTLE-ENDIAN order
 	int size;
+	private byte[][] levels;   // every level of the tree, built when first needed
 	
 	
 	//----------------Constructor---------------------------------------------------------------//
 	/**
 	 * Constructs a new MerkleTree Object.
-	 * In doing so Nodes are created for 
-	 * every transaction ID.
+	 * In doing so every transaction ID is 
+	 * decoded into the leaf hash array.
 	 * 
 	 * @param strArr a string array holding 
 	 * transaction IDs of a BitCoin Block
+	 * @throws IllegalArgumentException if a transaction
+	 * ID is not 64 hex digits, found before any hashing
 	 */
 	public MerkleTree(String[] strArr) {
-		int size = strArr.length;                     // the number of leaves in the tree
-		nodeArr = new Node[strArr.length];            // initialize an array to hold Nodes
+		this(strArr, null, 0);
+	}
+	
+	/**
+	 * Constructs a new MerkleTree Object from leaf
+	 * hashes that are already decoded. The array is
+	 * used as is and must not be changed afterwards.
+	 * 
+	 * @param hashes the leaf hashes packed 32 bytes
+	 * apiece in LITTLE-ENDIAN order
+	 * @param count the number of leaves in hashes
+	 */
+	public MerkleTree(byte[] hashes, int count) {
+		this(hashes, count, null, 0);
+	}
+	
+	private MerkleTree(String[] strArr, ForkJoinPool pool, int cutoff) {
+		size = strArr.length;                          // the number of leaves in the tree
 		
-		if (strArr.length == 0) {                      // creates an empty tree if no transactions available
+		if (size == 0) {                               // creates an empty tree if no transactions available
 			merkleRoot = null;
-			nodeArr = null;
-		} else if (strArr.length == 1) {              // creates a merkle tree with only one leaf
+			leafHashes = null;
+			return;
+		}
+		
+		leafHashes = new byte[size * HASH_LEN];        // one contiguous array for all of the leaves
+		for (int i = 0; i < size; ++i) {               // decode every transaction ID into its slot
+			decodeTxid(strArr[i], leafHashes, i * HASH_LEN);
+		}
+		
+		if (size == 1) {                               // a merkle tree with only one leaf
 			merkleRoot = strArr[0];
-			nodeArr[0] = new Node(strArr[0]);
-		} else {                                      // creates leaf nodes 
-			for (int i = 0; i < strArr.length; ++i) { // iterate through the transaction ID array creating new nodes 
-				if(strArr[i] != null) {
-					nodeArr[i]= new Node(strArr[i]);   
-				}
-			}
-			merkleRoot = getRoot(nodeArr);           // recursive call to calculate merkle root
+		} else {
+			merkleRoot = getRoot(pool, cutoff);
 		}
 	}
+	
+	private MerkleTree(byte[] hashes, int count, ForkJoinPool pool, int cutoff) {
+		size = count;
+		leafHashes = (count == 0) ? null : hashes;
+		merkleRoot = (count == 0) ? null : getRoot(pool, cutoff);
+	}
+	
+	/**
+	 * Constructs a new MerkleTree Object whose root is 
+	 * hashed on the common ForkJoinPool using the
+	 * default cutoff.
+	 * 
+	 * @param strArr a string array holding 
+	 * transaction IDs of a BitCoin Block
+	 * @return the new MerkleTree
+	 */
+	public static MerkleTree parallel(String[] strArr) {
+		return new MerkleTree(strArr, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_CUTOFF);
+	}
+	
+	/**
+	 * Constructs a new MerkleTree Object whose root is 
+	 * hashed on pool. Levels holding no more than cutoff 
+	 * hashes are hashed on the calling thread.
+	 * 
+	 * @param strArr a string array holding 
+	 * transaction IDs of a BitCoin Block
+	 * @param pool the pool to hash on
+	 * @param cutoff the largest level hashed on one thread
+	 * @return the new MerkleTree
+	 */
+	public static MerkleTree parallel(String[] strArr, ForkJoinPool pool, int cutoff) {
+		return new MerkleTree(strArr, pool, checkCutoff(cutoff));
+	}
+	
+	/**
+	 * The same as parallel(String[], ForkJoinPool, int)
+	 * for leaf hashes that are already decoded.
+	 * 
+	 * @param hashes the leaf hashes packed 32 bytes
+	 * apiece in LITTLE-ENDIAN order
+	 * @param count the number of leaves in hashes
+	 * @param pool the pool to hash on
+	 * @param cutoff the largest level hashed on one thread
+	 * @return the new MerkleTree
+	 */
+	public static MerkleTree parallel(byte[] hashes, int count, ForkJoinPool pool, int cutoff) {
+		return new MerkleTree(hashes, count, pool, checkCutoff(cutoff));
+	}
 	//-------------------End Constructor-------------------------------------------------------//
 	
 	//------------------Private Methods--------------------------------------------------------//
 	
 	/**
-	 * A recursive method that gets the merkle root 
-	 * for this tree
-	 * @param nodeArr an array of nodes
+	 * Gets the merkle root for this tree as 
+	 * a hex string.
+	 * 
+	 * @param pool the pool to hash on, null to hash on this thread
+	 * @param cutoff the largest level hashed on one thread
 	 * @return  the merkle root
 	 */
-	private String getRoot(Node[] nodeArr) {
-		byte[] hexA, hexB;                                  // variables to hold hexadecimal codes in byte arrays
-		Node[] hashList = new Node[(nodeArr.length+1)/2];   // a node array to hold fresh hashes from this layer of the tree
-		
-		// base case when only one node left (root)
-		if (nodeArr.length == 1) {
-			return nodeArr[0].getData();       // if only one node in tree then it must be the root, return the root
+	private String getRoot(ForkJoinPool pool, int cutoff) {
+		long start = System.nanoTime();
+		byte[] scratch = new byte[((size + 1) / 2) * HASH_LEN];  // holds the levels above the leaves
+		if (pool == null || size <= cutoff) {
+			computeRoot(leafHashes, size, scratch);
+		} else {
+			computeRootParallel(leafHashes, size, scratch, pool, cutoff);
 		}
 		
-		// iterate through the nodeArr incrementing by two
-		// hashing two nodes at a time
-		for (int i = 0; i < (nodeArr.length-1); i += 2) {	
-			hexA = nodeArr[i].getHexData();        // get the hex data from the first node
-			hexB = nodeArr[i+1].getHexData();      // get the hex data from the second node
-			hashList[i/2] = hashEm(hexA,hexB);     // hash the two nodes together
+		MetricsRegistry metrics = Metrics.registry();
+		metrics.increment(Metrics.Counter.TRANSACTIONS, size);
+		metrics.increment(Metrics.Counter.HASHES, hashCount(size));
+		Metrics.stageDone(Metrics.Stage.TREE_BUILD, start);
+		return encodeTxid(scratch, 0);
+	}
+	
+	/**
+	 * Builds every level of the tree. The leaves are
+	 * level zero and the root is the last level.
+	 * 
+	 * @return the levels of the tree
+	 */
+	private static byte[][] buildLevels(byte[] leaves, int count) {
+		int depth = 0;
+		for (int n = count; n > 1; n = (n + 1) / 2) {   // count the levels above the leaves
+			++depth;
 		}
 		
-		// if there are an odd number of nodes
-		// hash the last node twice
-		if ((nodeArr.length % 2) == 1) {
-			hexA = nodeArr[nodeArr.length-1].getHexData();   // get the hex data from the last node
-			hashList[hashList.length-1] = hashEm(hexA,hexA); // hash the node with itself
+		byte[][] lvls = new byte[depth + 1][];
+		lvls[0] = leaves;
+		DoubleSha256 sha = DoubleSha256.get();
+		for (int i = 1; i <= depth; ++i) {
+			lvls[i] = new byte[((count + 1) / 2) * HASH_LEN];
+			count = hashEm(sha, lvls[i - 1], count, lvls[i]);
+		}
+		return lvls;
+	}
+	
+	/**
+	 * @return the number of double sha256 hashes it takes
+	 * to get the root of a tree of count leaves
+	 */
+	static long hashCount(int count) {
+		long hashes = 0;
+		while (count > 1) {
+			count = (count + 1) / 2;
+			hashes += count;
+		}
+		return hashes;
+	}
+	
+	private static int checkCutoff(int cutoff) {
+		if (cutoff < 1) {
+			throw new IllegalArgumentException("the cutoff must be at least one: " + cutoff);
 		}
-		// recursive call
-		return getRoot(hashList);
+		return cutoff;
 	}
+	
+	//------------------Package Methods--------------------------------------------------------//
+	
+	/**
+	 * @return every level of the tree, the leaves first
+	 * and the root last, or null for an empty tree
+	 */
+	synchronized byte[][] getLevels() {
+		if (levels == null && size > 0) {
+			levels = buildLevels(leafHashes, size);
+		}
+		return levels;
+	}
+	
+	/**
+	 * @param hash a LITTLE-ENDIAN hash
+	 * @param off where in hash it starts
+	 * @return the index of the first leaf equal to
+	 * the hash, or -1 if there is none
+	 */
+	int indexOf(byte[] hash, int off) {
+		outer:
+		for (int i = 0; i < size; ++i) {
+			int leaf = i * HASH_LEN;
+			for (int j = 0; j < HASH_LEN; ++j) {
+				if (leafHashes[leaf + j] != hash[off + j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Computes the merkle root of count packed hashes
+	 * in src. Every level is written over the front of
+	 * dst, so when done the root is found in the first
+	 * 32 bytes of dst. dst must hold at least (count+1)/2
+	 * hashes, or one hash when count is one, and may be 
+	 * src itself in which case the leaves are overwritten. 
+	 * 
+	 * @param src the leaf hashes
+	 * @param count the number of leaf hashes, at least one
+	 * @param dst the array the levels and root are written to
+	 */
+	static void computeRoot(byte[] src, int count, byte[] dst) {
+		if (count == 1) {                          // the only leaf is the root
+			System.arraycopy(src, 0, dst, 0, HASH_LEN);
+			return;
+		}
+		DoubleSha256 sha = DoubleSha256.get();     // this thread's digest
+		while (count > 1) {
+			count = hashEm(sha, src, count, dst);  // hash one level into dst
+			src = dst;                             // the rest of the levels are done in place
+		}
+	}
+	
+	/**
+	 * The same as computeRoot but every level holding more
+	 * than cutoff hashes is split across pool. A level 
+	 * can't be hashed in place while other threads are 
+	 * still reading it, so those levels go back and forth
+	 * between dst and a second scratch array.
+	 * 
+	 * @param src the leaf hashes
+	 * @param count the number of leaf hashes, more than cutoff
+	 * @param dst the array the root is written to, at 
+	 * least (count+1)/2 hashes long and not src
+	 * @param pool the pool to hash on
+	 * @param cutoff the largest level hashed on one thread
+	 */
+	static void computeRootParallel(byte[] src, int count, byte[] dst, ForkJoinPool pool, int cutoff) {
+		byte[] other = new byte[((count + 3) / 4) * HASH_LEN];   // big enough for the second level
+		byte[] next = dst;                                       // where the next level goes
 		
+		while (count > cutoff) {
+			pool.invoke(new LevelTask(src, count, next, 0, (count + 1) / 2, cutoff));
+			count = (count + 1) / 2;
+			src = next;
+			next = (next == dst) ? other : dst;                  // swap the scratch arrays
+		}
+		computeRoot(src, count, dst);                            // finish the small levels on this thread
+	}
+	
 	/**
-	 * Hashes two nodes together and returns
-	 * a new node made from their hash.
+	 * Hashes one level of the tree, two neighbouring
+	 * hashes at a time. If there is an odd number of 
+	 * hashes the last one is hashed with itself. The 
+	 * new level is written to the front of dst, which 
+	 * may be src.
 	 * 
-	 * @param hexA
-	 * @param hexB
-	 * @return
+	 * @param sha the digest to use
+	 * @param src the hashes of this level
+	 * @param count the number of hashes in src
+	 * @param dst the array the next level is written to
+	 * @return the number of hashes in the next level
 	 */
-	private Node hashEm(byte[] hexA, byte[] hexB) {
-		String hash;                            // a string to hold a hash
-		byte[] hexARev, hexBRev, combined;      // byte array variables
-		byte[] combinedRev, sha256, sha256Rev;  // more byte array variables
-		DigestUtils digest = new DigestUtils(); // a DigestUtils Object from org.apache.commons.codec library to handle sha256 hashing
+	static int hashEm(DoubleSha256 sha, byte[] src, int count, byte[] dst) {
+		int pairs = count / 2;
 		
-		// first we must reverse the byte array holding the hex codes this
-		// compensates for LITTLE-ENDIAN requirement for bitcoin protocol 
-		hexARev = new byte[hexA.length];  // create new byte arrays to hold reversed hex
-		hexBRev = new byte[hexB.length];
+		// both hashes of a pair sit next to each other so
+		// each pair is a single 64 byte message, the whole
+		// level goes to the hash backend at once
+		HashBackends.get().hashLevel(src, 0, pairs, dst, 0);
 		
-		// reverse hexA
-		for (int i = 0; i < hexA.length; ++i) {    // iterate through the hex in reverse order
-			byte temp = hexA[hexA.length - (i+1)];   
-			hexARev[i] = temp;                    
+		// if there are an odd number of hashes
+		// hash the last one twice
+		if ((count % 2) == 1) {
+			int last = (count - 1) * HASH_LEN;
+			sha.hashPair(src, last, src, last, dst, pairs * HASH_LEN);
 		}
-		
-		// reverse hexB
-		for (int j = 0; j < hexB.length; ++j) {   // iterate through the hex in reverse order
-			byte temp = hexB[hexB.length - (j+1)];
-			hexBRev[j] = temp;
+		return (count + 1) / 2;
+	}
+	
+	/**
+	 * Decodes a 64 character hex transaction ID into
+	 * dst at off reversing the byte order on the way.
+	 * 
+	 * @param txid the hex transaction ID
+	 * @param dst the array to write the 32 bytes into
+	 * @param off where in dst to write
+	 * @throws IllegalArgumentException if txid is not 
+	 * 64 hex characters
+	 */
+	static void decodeTxid(CharSequence txid, byte[] dst, int off) {
+		if (txid.length() != 2 * HASH_LEN) {
+			throw new IllegalArgumentException("a transaction ID must be 64 hex characters: " + txid);
 		}
+		for (int i = 0; i < HASH_LEN; ++i) {
+			int hi = Character.digit(txid.charAt(2 * i), 16);
+			int lo = Character.digit(txid.charAt(2 * i + 1), 16);
+			if ((hi | lo) < 0) {
+				throw new IllegalArgumentException("not a hex transaction ID: " + txid);
+			}
+			dst[off + HASH_LEN - 1 - i] = (byte) ((hi << 4) | lo);   // last byte of the hex is first in the array
+		}
+	}
+	
+	/**
+	 * Checks that every transaction ID is 64 hex digits,
+	 * without decoding or hashing anything.
+	 * 
+	 * @param txids the hex transaction IDs
+	 * @return the index of the first transaction ID that
+	 * is not, or -1 if they all are
+	 */
+	public static int findMalformed(CharSequence[] txids) {
+		for (int i = 0; i < txids.length; ++i) {
+			if (!isTxid(txids[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param txid a transaction ID or hash, may be null
+	 * @return true if it is 64 hex digits
+	 */
+	public static boolean isTxid(CharSequence txid) {
+		if (txid == null || txid.length() != 2 * HASH_LEN) {
+			return false;
+		}
+		for (int i = 0; i < txid.length(); ++i) {
+			if (Character.digit(txid.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Encodes the 32 byte hash at off in src into a 
+	 * lower case hex string reversing the byte order.
+	 * 
+	 * @param src the array holding the hash
+	 * @param off where in src the hash starts
+	 * @return the hex string
+	 */
+	static String encodeTxid(byte[] src, int off) {
+		char[] hex = new char[2 * HASH_LEN];
+		for (int i = 0; i < HASH_LEN; ++i) {
+			int b = src[off + HASH_LEN - 1 - i] & 0xff;
+			hex[2 * i] = HEX_DIGITS[b >>> 4];
+			hex[2 * i + 1] = HEX_DIGITS[b & 0x0f];
+		}
+		return new String(hex);
+	}
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	//---------------Nested LevelTask Class----------------------------------//
+	
+	/**
+	 * This class hashes the outputs from up to (not 
+	 * including) to of one level, splitting itself in
+	 * half until no more than cutoff outputs are left.
+	 */
+	private static class LevelTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		
-		// now combine the two reversed hex codes
-		combined = new byte[hexA.length + hexB.length];                   // create a new byte array to hold combined hex
-		System.arraycopy(hexARev, 0, combined, 0, hexA.length);           // put the first hex into the new byte array
-		System.arraycopy(hexBRev, 0, combined, hexA.length, hexB.length); // append the second hex into the new byte array
-		
-		// hash the combined hex code twice with sha256
-		sha256 = digest.sha256(digest.sha256(combined));
+		private final byte[] src, dst;      // the level being hashed and where its hashes go
+		private final int count;            // the number of hashes in the level
+		private final int from, to;         // the range of outputs this task hashes
+		private final int cutoff;           // the largest range hashed without splitting
 		
-		// we must reverse the hash to put back in BIG-ENDIAN
-		sha256Rev = new byte[sha256.length];          // create a new byte array to hold the reversed hash code
-		for (int i = 0; i < sha256.length; ++i) {     // iterate through in reverse order
-			byte temp = sha256[sha256.length - (1+i)];
-			sha256Rev[i] = temp;
+		LevelTask(byte[] src, int count, byte[] dst, int from, int to, int cutoff) {
+			this.src = src;
+			this.count = count;
+			this.dst = dst;
+			this.from = from;
+			this.to = to;
+			this.cutoff = cutoff;
 		}
 		
-		// convert to hex a string representation
-		hash = Hex.encodeHexString(sha256Rev);
-		
-		// create a new node with the combined hex string
-		return new Node(hash);	
+		@Override
+		protected void compute() {
+			if (to - from <= cutoff) {
+				int pairs = Math.min(to, count / 2) - from;                    // the whole pairs in this range
+				HashBackends.get().hashLevel(src, 2 * from * HASH_LEN, pairs, dst, from * HASH_LEN);
+				if (from + pairs < to) {                                       // an odd last hash is hashed with itself
+					int left = (count - 1) * HASH_LEN;
+					DoubleSha256.get().hashPair(src, left, src, left, dst, (to - 1) * HASH_LEN);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new LevelTask(src, count, dst, from, mid, cutoff),
+			          new LevelTask(src, count, dst, mid, to, cutoff));
+		}
 	}
+	//------------End Nested LevelTask Class------------------------------------//
 	
 
 	//----------------Public Methods-------------------------------------------------//
 	
 	public String getMerkleRoot() { return merkleRoot; }
-
-
-	//---------------Nested Node Class----------------------------------//
 	
 	/**
-	 * This class is a nested class to 
-	 * hold leaf nodes of a Merkle Tree.
-	  */
-	private static class Node {
-		String data;               // data must be a string representation of a hexadecimal code 
-		byte[] hexData;            // a byte array to hold a hex version of the data
-		
+	 * Gets the inclusion proof of the leaf at index.
+	 * 
+	 * @param index the leaf index of the transaction
+	 * @return the proof for that leaf
+	 * @throws IndexOutOfBoundsException if there is 
+	 * no such leaf
+	 */
+	public MerkleProof getProof(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("no leaf " + index + " in a tree of " + size);
+		}
+		byte[][] lvls = getLevels();
+		int depth = lvls.length - 1;
+		byte[] siblings = new byte[depth * HASH_LEN];
+		boolean[] siblingLeft = new boolean[depth];
 		
-		//**********Nested Node Constructor******************//
-		/**
-		 * Constructs a new Node
-		 * @param str
-		 */
-		public Node(String str) {
-			data = str;                               // set data to str
-			
-			// decode the hex string into bytes 
-			try {
-				hexData =  Hex.decodeHex(data.toCharArray());       // decode the hex string into bytes
-			} catch (DecoderException e1) {
-				System.out.println("Sorry, a decoding excpetion occured!");
-				e1.printStackTrace();
+		int pos = index;
+		int count = size;
+		for (int level = 0; level < depth; ++level) {
+			int sib = pos ^ 1;                     // the other hash of the pair
+			if (sib >= count) {                    // an odd last hash was paired with itself
+				sib = pos;
 			}
+			System.arraycopy(lvls[level], sib * HASH_LEN, siblings, level * HASH_LEN, HASH_LEN);
+			siblingLeft[level] = (pos & 1) == 1;
+			pos >>>= 1;
+			count = (count + 1) / 2;
 		}
-		
-		/**
-		 * @return the hexadecimal representation 
-		 * of the data as byte array
-		 */
-		public byte[] getHexData() { return hexData; }
-		
-		
-		/**
-		 * @return the string representation of the 
-		 * data
-		 */
-		public String getData() { return data; }	
-	}
-	//------------End Nested Node Class------------------------------------//
-}
\ No newline at end of file
+		return new MerkleProof(index, siblings, siblingLeft);
+	}
+	
+	/**
+	 * Gets the inclusion proof of a transaction.
+	 * 
+	 * @param txid the hex transaction ID
+	 * @return the proof for the transaction, or null
+	 * if it is not in this tree
+	 */
+	public MerkleProof getProof(String txid) {
+		byte[] hash = new byte[HASH_LEN];
+		decodeTxid(txid, hash, 0);
+		int index = indexOf(hash, 0);
+		return (index < 0) ? null : getProof(index);
+	}
+	
+	/**
+	 * Checks that txid is included under root using
+	 * proof, see MerkleProof.verifyProof.
+	 * 
+	 * @param txid the hex transaction ID
+	 * @param proof the proof for txid
+	 * @param root the hex merkle root of the block
+	 * @return true if the proof leads from txid to root
+	 */
+	public static boolean verifyProof(String txid, MerkleProof proof, String root) {
+		return MerkleProof.verifyProof(txid, proof, root);
+	}
+	
+	/**
+	 * @return the number of leaves in this tree
+	 */
+	public int size() { return size; }
+}
@@ -0,0 +1,212 @@
+package MerkleTreeVerify;
+import java.util.Arrays;
+
+
+/**
+ * This class works out merkle roots block after block
+ * using the same scratch arrays. The arrays grow to fit
+ * the largest block seen so far and are kept between
+ * blocks, so once they are big enough checking a block
+ * with matches() allocates nothing at all. Keep one
+ * builder per worker thread, a builder is not thread safe.
+ *
+ * Use reset() before each block, add the leaves and then
+ * ask for the root:
+ * <pre>
+ *   builder.reset();
+ *   builder.addAll(blk.getTransactionHashes(), blk.getTransactionCount());
+ *   boolean ok = builder.matches(blk.getMerkleRoot());
+ * </pre>
+ */
+public class MerkleTreeBuilder {
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+
+	private byte[] leaves;                          // the leaves of the current block, packed LITTLE-ENDIAN
+	private byte[] levels;                          // where the levels above the leaves are worked out
+	private final byte[] expected = new byte[HASH_LEN];   // a root being compared, decoded
+	private int count;                              // the number of leaves added since reset()
+	private boolean done;                           // true when the root in levels is for the current leaves
+
+
+	//----------------Constructors-------------------------------------------//
+	/**
+	 * Constructs a builder with room for a typical block.
+	 */
+	public MerkleTreeBuilder() {
+		this(4096);
+	}
+
+	/**
+	 * Constructs a builder with room for capacity leaves
+	 * before it has to grow.
+	 *
+	 * @param capacity the number of leaves to make room for
+	 */
+	public MerkleTreeBuilder(int capacity) {
+		capacity = Math.max(capacity, 1);
+		leaves = new byte[capacity * HASH_LEN];
+		levels = new byte[((capacity + 1) / 2) * HASH_LEN];
+	}
+	//----------------End Constructors---------------------------------------//
+
+	//----------------Public Methods-----------------------------------------//
+
+	/**
+	 * Forgets the leaves of the last block, keeping the
+	 * scratch arrays.
+	 */
+	public void reset() {
+		count = 0;
+		done = false;
+	}
+
+	/**
+	 * Adds one leaf.
+	 *
+	 * @param hash the array holding the LITTLE-ENDIAN hash
+	 * @param off where in hash it starts
+	 */
+	public void add(byte[] hash, int off) {
+		ensureCapacity(count + 1);
+		System.arraycopy(hash, off, leaves, count * HASH_LEN, HASH_LEN);
+		++count;
+		done = false;
+	}
+
+	/**
+	 * Adds one leaf from a hex transaction ID.
+	 *
+	 * @param txid the hex transaction ID
+	 * @throws IllegalArgumentException if txid is not
+	 * 64 hex characters
+	 */
+	public void add(CharSequence txid) {
+		ensureCapacity(count + 1);
+		MerkleTree.decodeTxid(txid, leaves, count * HASH_LEN);
+		++count;
+		done = false;
+	}
+
+	/**
+	 * Adds many leaves at once.
+	 *
+	 * @param hashes the leaves packed 32 bytes apiece in
+	 * LITTLE-ENDIAN order
+	 * @param n the number of leaves in hashes
+	 */
+	public void addAll(byte[] hashes, int n) {
+		ensureCapacity(count + n);
+		System.arraycopy(hashes, 0, leaves, count * HASH_LEN, n * HASH_LEN);
+		count += n;
+		done = false;
+	}
+
+	/**
+	 * Works out the root of the leaves added since reset()
+	 * and copies it out.
+	 *
+	 * @param dst the array to write the LITTLE-ENDIAN root into
+	 * @param off where in dst to write it
+	 * @throws IllegalStateException if no leaves were added
+	 */
+	public void getMerkleRoot(byte[] dst, int off) {
+		System.arraycopy(root(), 0, dst, off, HASH_LEN);
+	}
+
+	/**
+	 * @return the hex root of the leaves added since reset()
+	 * @throws IllegalStateException if no leaves were added
+	 */
+	public String getMerkleRoot() { return MerkleTree.encodeTxid(root(), 0); }
+
+	/**
+	 * Checks the root of the leaves added since reset()
+	 * against a root, allocating nothing.
+	 *
+	 * @param root the hex root to compare with
+	 * @return true if they are the same, false if not or
+	 * if root is not 64 hex characters
+	 * @throws IllegalStateException if no leaves were added
+	 */
+	public boolean matches(CharSequence root) {
+		if (!MerkleTree.isTxid(root)) {
+			return false;
+		}
+		MerkleTree.decodeTxid(root, expected, 0);
+		return Arrays.equals(root(), 0, HASH_LEN, expected, 0, HASH_LEN);
+	}
+
+	/**
+	 * Checks a block using the scratch arrays. The leaves
+	 * added before are replaced by the block's. The block
+	 * may still allocate, getMerkleRoot() makes a new 
+	 * String each call, so for a path that allocates 
+	 * nothing use addAll() and matches() with roots already
+	 * in hand.
+	 *
+	 * @param blk the block to check
+	 * @return true if the transactions hash to the root
+	 * the block gives
+	 */
+	public boolean verify(BlockSource blk) {
+		reset();
+		if (blk.getTransactionCount() == 0) {
+			return false;
+		}
+		addAll(blk.getTransactionHashes(), blk.getTransactionCount());
+		return matches(blk.getMerkleRoot());
+	}
+
+	/**
+	 * Copies the leaves into a MerkleTree, for when the
+	 * levels or proofs are needed as well as the root.
+	 *
+	 * @return a new tree of the leaves added since reset()
+	 */
+	public MerkleTree toMerkleTree() {
+		return new MerkleTree(Arrays.copyOf(leaves, count * HASH_LEN), count);
+	}
+
+	/** @return the number of leaves added since reset() */
+	public int size() { return count; }
+
+	/** @return the most leaves that fit before the scratch arrays grow */
+	public int capacity() { return leaves.length / HASH_LEN; }
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * Works out the root if it is not already.
+	 *
+	 * @return the array holding the root in its first 32 bytes
+	 */
+	private byte[] root() {
+		if (count == 0) {
+			throw new IllegalStateException("no leaves were added");
+		}
+		if (!done) {
+			long start = System.nanoTime();
+			MerkleTree.computeRoot(leaves, count, levels);
+			done = true;
+
+			MetricsRegistry metrics = Metrics.registry();
+			metrics.increment(Metrics.Counter.TRANSACTIONS, count);
+			metrics.increment(Metrics.Counter.HASHES, MerkleTree.hashCount(count));
+			Metrics.stageDone(Metrics.Stage.TREE_BUILD, start);
+		}
+		return levels;
+	}
+
+	/**
+	 * Grows the scratch arrays to fit n leaves, at least
+	 * doubling them so growing is rare.
+	 */
+	private void ensureCapacity(int n) {
+		if (n * HASH_LEN > leaves.length) {
+			int capacity = Math.max(n, 2 * (leaves.length / HASH_LEN));
+			leaves = Arrays.copyOf(leaves, capacity * HASH_LEN);
+			levels = new byte[((capacity + 1) / 2) * HASH_LEN];
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package MerkleTreeVerify;
+
+
+/**
+ * This class is where the verifier reports what it is
+ * doing: how long each stage takes, how many hashes, bytes
+ * and transactions go through it and how many things go 
+ * wrong. Everything goes to one MetricsRegistry, by default
+ * a DefaultMetricsRegistry which keeps histograms and 
+ * counters and can be read over JMX. setRegistry() swaps 
+ * in another registry, or NOOP to turn metrics off.
+ */
+public final class Metrics {
+	
+	/**
+	 * The stages whose latency is recorded.
+	 */
+	public enum Stage {
+		/** getting a block from a site or file, parsing included when it is streamed */
+		FETCH,
+		/** pulling the transaction IDs out of a block */
+		PARSE,
+		/** building a MerkleTree and hashing its root */
+		TREE_BUILD,
+		/** everything BlockVerify does for one block */
+		VERIFY
+	}
+	
+	/**
+	 * The things that are counted.
+	 */
+	public enum Counter {
+		/** blocks whose root was checked */
+		BLOCKS_VERIFIED,
+		/** blocks whose computed root did not match */
+		MISMATCHES,
+		/** blocks that could not be fetched */
+		FETCH_FAILURES,
+		/** blocks that could not be parsed */
+		PARSE_FAILURES,
+		/** transaction IDs skipped for not being 64 hex digits */
+		MALFORMED_TXIDS,
+		/** transactions put into Merkle Trees */
+		TRANSACTIONS,
+		/** double sha256 hashes done building Merkle Trees */
+		HASHES,
+		/** bytes of block data parsed */
+		BYTES_PARSED
+	}
+	
+	/** a registry that throws everything away */
+	public static final MetricsRegistry NOOP = new MetricsRegistry() {
+		@Override
+		public void recordLatency(Stage stage, long nanos) { }
+		
+		@Override
+		public void increment(Counter counter, long delta) { }
+		
+		@Override
+		public void recordBlockSize(int transactions) { }
+	};
+	
+	private static volatile MetricsRegistry registry = new DefaultMetricsRegistry();
+	
+	private Metrics() { }
+	
+	/**
+	 * @return the registry metrics are reported to
+	 */
+	public static MetricsRegistry registry() { return registry; }
+	
+	/**
+	 * @param r the registry to report metrics to from now on
+	 */
+	public static void setRegistry(MetricsRegistry r) {
+		if (r == null) {
+			throw new IllegalArgumentException("use Metrics.NOOP to turn metrics off");
+		}
+		registry = r;
+	}
+	
+	/**
+	 * Records the time since start, a System.nanoTime() 
+	 * reading, against stage.
+	 */
+	static void stageDone(Stage stage, long start) {
+		registry.recordLatency(stage, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Adds one to counter.
+	 */
+	static void count(Counter counter) {
+		registry.increment(counter, 1);
+	}
+}
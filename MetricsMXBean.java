@@ -0,0 +1,38 @@
+package MerkleTreeVerify;
+import java.util.Map;
+
+
+/**
+ * This interface is the JMX view of a DefaultMetricsRegistry,
+ * registered as MerkleTreeVerify:type=Metrics. Latencies are
+ * given in milliseconds per stage.
+ */
+public interface MetricsMXBean {
+	
+	/** @return every counter by name */
+	Map<String, Long> getCounters();
+	
+	/** @return the median latency of each stage */
+	Map<String, Double> getLatencyP50Millis();
+	
+	/** @return the 99th percentile latency of each stage */
+	Map<String, Double> getLatencyP99Millis();
+	
+	/** @return the longest latency of each stage */
+	Map<String, Double> getLatencyMaxMillis();
+	
+	/** @return the number of times each stage ran */
+	Map<String, Long> getLatencyCounts();
+	
+	/** @return the mean number of transactions per verified block */
+	double getMeanTransactionsPerBlock();
+	
+	/** @return the double sha256 hashes done per second of tree building */
+	double getHashesPerSecond();
+	
+	/** @return the bytes of block data parsed per second of parsing */
+	double getBytesParsedPerSecond();
+	
+	/** Forgets every metric. */
+	void reset();
+}
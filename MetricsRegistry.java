@@ -0,0 +1,34 @@
+package MerkleTreeVerify;
+
+
+/**
+ * This interface receives the metrics reported through
+ * Metrics. Its methods are called on the hashing and 
+ * parsing threads, so they must be thread safe and cheap.
+ */
+public interface MetricsRegistry {
+	
+	/**
+	 * Records how long one run of a stage took.
+	 * 
+	 * @param stage the stage
+	 * @param nanos the time taken in nanoseconds
+	 */
+	void recordLatency(Metrics.Stage stage, long nanos);
+	
+	/**
+	 * Adds to a counter.
+	 * 
+	 * @param counter the counter
+	 * @param delta how much to add
+	 */
+	void increment(Metrics.Counter counter, long delta);
+	
+	/**
+	 * Records the number of transactions in a block 
+	 * that was verified.
+	 * 
+	 * @param transactions the number of transactions
+	 */
+	void recordBlockSize(int transactions);
+}
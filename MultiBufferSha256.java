@@ -0,0 +1,259 @@
+package MerkleTreeVerify;
+import java.util.Arrays;
+
+
+/**
+ * This class double sha256 hashes several 64 byte 
+ * messages in lockstep, each message in its own lane of
+ * int arrays. Every round does the same work on every 
+ * lane, the shape of loop the JIT can turn into SIMD 
+ * instructions.
+ * 
+ * All messages have the same length, so most of the 
+ * work is the same for every level and is done once up
+ * front: the second block of the first sha256 is nothing
+ * but padding and its message schedule never changes, and
+ * the second sha256 always hashes a 32 byte digest.
+ * 
+ * An instance keeps its lane arrays, so it is meant for 
+ * one thread. MultiBufferSha256 objects are handed out per
+ * thread by the backend returned from forLanes().
+ */
+final class MultiBufferSha256 {
+	private static final int[] K = {
+		0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+		0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+		0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+		0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+		0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+		0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+		0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+		0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2,
+	};
+	private static final int[] H0 = {
+		0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19,
+	};
+	private static final int[] PADDING_64;    // K plus the schedule of the padding block after a 64 byte message
+	private final int[] zeros;                // stands in for the schedule already folded into PADDING_64
+	
+	static {
+		int[] w = new int[64];
+		w[0] = 0x80000000;                    // the 1 bit after the message
+		w[15] = 512;                          // the message length in bits
+		expand(w);
+		PADDING_64 = new int[64];
+		for (int t = 0; t < 64; ++t) {
+			PADDING_64[t] = K[t] + w[t];
+		}
+	}
+	
+	private final int lanes;                  // the number of messages hashed side by side
+	private final int[][] w;                  // the message schedule, w[t][lane]
+	private final int[][] state;              // the hash state, state[word][lane]
+	private final int[] a, b, c, d, e, f, g, h;   // the working variables of each lane
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	/**
+	 * Constructs a MultiBufferSha256.
+	 * 
+	 * @param lanes the number of messages hashed side by side
+	 */
+	MultiBufferSha256(int lanes) {
+		this.lanes = lanes;
+		zeros = new int[lanes];
+		w = new int[64][lanes];
+		state = new int[8][lanes];
+		a = new int[lanes]; b = new int[lanes]; c = new int[lanes]; d = new int[lanes];
+		e = new int[lanes]; f = new int[lanes]; g = new int[lanes]; h = new int[lanes];
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	/**
+	 * @param lanes the number of messages hashed side by side
+	 * @return a backend hashing with a MultiBufferSha256 
+	 * of that many lanes per thread
+	 */
+	static HashBackend forLanes(final int lanes) {
+		final ThreadLocal<MultiBufferSha256> local = new ThreadLocal<MultiBufferSha256>() {
+			@Override
+			protected MultiBufferSha256 initialValue() { return new MultiBufferSha256(lanes); }
+		};
+		return new HashBackend() {
+			@Override
+			public void hashLevel(byte[] src, int srcOff, int count, byte[] dst, int dstOff) {
+				local.get().hashLevel(src, srcOff, count, dst, dstOff);
+			}
+			
+			@Override
+			public String name() { return "multibuffer-" + lanes; }
+		};
+	}
+	
+	/**
+	 * Hashes a level, see HashBackend.hashLevel. Whole 
+	 * groups of lanes messages go through the lanes and
+	 * any messages left over go through the JDK digest.
+	 */
+	void hashLevel(byte[] src, int srcOff, int count, byte[] dst, int dstOff) {
+		int i = 0;
+		for (; i + lanes <= count; i += lanes) {
+			hashGroup(src, srcOff + i * 2 * MerkleTree.HASH_LEN, dst, dstOff + i * MerkleTree.HASH_LEN);
+		}
+		DoubleSha256 sha = DoubleSha256.get();
+		for (; i < count; ++i) {
+			sha.hash(src, srcOff + i * 2 * MerkleTree.HASH_LEN, 2 * MerkleTree.HASH_LEN,
+			         dst, dstOff + i * MerkleTree.HASH_LEN);
+		}
+	}
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	/**
+	 * Double sha256 hashes lanes messages at once.
+	 */
+	private void hashGroup(byte[] src, int srcOff, byte[] dst, int dstOff) {
+		// the first sha256, block one is the message itself
+		for (int t = 0; t < 16; ++t) {
+			int[] wt = w[t];
+			for (int l = 0; l < lanes; ++l) {
+				int p = srcOff + l * 64 + 4 * t;
+				wt[l] = (src[p] << 24) | ((src[p + 1] & 0xff) << 16) | ((src[p + 2] & 0xff) << 8) | (src[p + 3] & 0xff);
+			}
+		}
+		expandLanes();
+		for (int j = 0; j < 8; ++j) {
+			Arrays.fill(state[j], H0[j]);
+		}
+		compress();
+		
+		// block two is the fixed padding, its schedule is already known
+		compressPadding();
+		
+		// the second sha256 hashes the 32 byte digest in a single block
+		for (int t = 0; t < 8; ++t) {
+			System.arraycopy(state[t], 0, w[t], 0, lanes);
+		}
+		Arrays.fill(w[8], 0x80000000);
+		for (int t = 9; t < 15; ++t) {
+			Arrays.fill(w[t], 0);
+		}
+		Arrays.fill(w[15], 256);
+		expandLanes();
+		for (int j = 0; j < 8; ++j) {
+			Arrays.fill(state[j], H0[j]);
+		}
+		compress();
+		
+		// write the hashes out BIG-ENDIAN word by word, the way sha256 outputs them
+		for (int l = 0; l < lanes; ++l) {
+			int p = dstOff + l * MerkleTree.HASH_LEN;
+			for (int j = 0; j < 8; ++j) {
+				int v = state[j][l];
+				dst[p++] = (byte) (v >>> 24);
+				dst[p++] = (byte) (v >>> 16);
+				dst[p++] = (byte) (v >>> 8);
+				dst[p++] = (byte) v;
+			}
+		}
+	}
+	
+	/**
+	 * Runs the 64 rounds on every lane using the schedule
+	 * in w, then adds the result into state.
+	 */
+	private void compress() {
+		load(state);
+		for (int t = 0; t < 64; ++t) {
+			rounds(K[t], w[t]);
+		}
+		store(state);
+	}
+	
+	/**
+	 * Runs the 64 rounds of the fixed padding block on
+	 * every lane and adds the result into state.
+	 */
+	private void compressPadding() {
+		load(state);
+		for (int t = 0; t < 64; ++t) {
+			rounds(PADDING_64[t], zeros);
+		}
+		store(state);
+	}
+	
+	private void load(int[][] st) {
+		System.arraycopy(st[0], 0, a, 0, lanes);
+		System.arraycopy(st[1], 0, b, 0, lanes);
+		System.arraycopy(st[2], 0, c, 0, lanes);
+		System.arraycopy(st[3], 0, d, 0, lanes);
+		System.arraycopy(st[4], 0, e, 0, lanes);
+		System.arraycopy(st[5], 0, f, 0, lanes);
+		System.arraycopy(st[6], 0, g, 0, lanes);
+		System.arraycopy(st[7], 0, h, 0, lanes);
+	}
+	
+	private void store(int[][] st) {
+		for (int l = 0; l < lanes; ++l) {
+			st[0][l] += a[l];
+			st[1][l] += b[l];
+			st[2][l] += c[l];
+			st[3][l] += d[l];
+			st[4][l] += e[l];
+			st[5][l] += f[l];
+			st[6][l] += g[l];
+			st[7][l] += h[l];
+		}
+	}
+	
+	/**
+	 * One sha256 round on every lane, adding k plus the
+	 * lane's word of wt.
+	 */
+	private void rounds(int k, int[] wt) {
+		int[] a = this.a, b = this.b, c = this.c, d = this.d;
+		int[] e = this.e, f = this.f, g = this.g, h = this.h;
+		for (int l = 0; l < lanes; ++l) {
+			int el = e[l], al = a[l], bl = b[l], cl = c[l];
+			int t1 = h[l] + (Integer.rotateRight(el, 6) ^ Integer.rotateRight(el, 11) ^ Integer.rotateRight(el, 25))
+			       + ((el & f[l]) ^ (~el & g[l])) + k + wt[l];
+			int t2 = (Integer.rotateRight(al, 2) ^ Integer.rotateRight(al, 13) ^ Integer.rotateRight(al, 22))
+			       + ((al & bl) ^ (al & cl) ^ (bl & cl));
+			h[l] = g[l];
+			g[l] = f[l];
+			f[l] = el;
+			e[l] = d[l] + t1;
+			d[l] = cl;
+			c[l] = bl;
+			b[l] = al;
+			a[l] = t1 + t2;
+		}
+	}
+	
+	/**
+	 * Expands the first 16 words of w into all 64 on
+	 * every lane.
+	 */
+	private void expandLanes() {
+		for (int t = 16; t < 64; ++t) {
+			int[] w2 = w[t - 2], w7 = w[t - 7], w15 = w[t - 15], w16 = w[t - 16], wt = w[t];
+			for (int l = 0; l < lanes; ++l) {
+				int x = w15[l], y = w2[l];
+				int s0 = Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18) ^ (x >>> 3);
+				int s1 = Integer.rotateRight(y, 17) ^ Integer.rotateRight(y, 19) ^ (y >>> 10);
+				wt[l] = w16[l] + s0 + w7[l] + s1;
+			}
+		}
+	}
+	
+	/**
+	 * Expands the first 16 words of a single schedule.
+	 */
+	private static void expand(int[] w) {
+		for (int t = 16; t < 64; ++t) {
+			int s0 = Integer.rotateRight(w[t - 15], 7) ^ Integer.rotateRight(w[t - 15], 18) ^ (w[t - 15] >>> 3);
+			int s1 = Integer.rotateRight(w[t - 2], 17) ^ Integer.rotateRight(w[t - 2], 19) ^ (w[t - 2] >>> 10);
+			w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+		}
+	}
+}
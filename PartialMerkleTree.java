@@ -0,0 +1,353 @@
+package MerkleTreeVerify;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * This class holds one proof for many transactions of
+ * the same block, in the partial merkle tree format of
+ * the bitcoin merkleblock message. The tree is walked
+ * depth first and every node visited gives one flag bit,
+ * set when a matched transaction is below it. A node
+ * with no match below, or a leaf, also gives its hash
+ * and is not entered. Siblings shared by the matched
+ * transactions are sent only once, so k proofs out of
+ * n transactions take far fewer than k*log2(n) hashes.
+ *
+ * The wire format is:
+ * <pre>
+ *   transactions  uint32    the number of transactions in the block
+ *   hashes        varint    the number of hashes, then 32 bytes apiece
+ *   flags         varint    the number of flag bytes, then the flags
+ *                           with the first flag in the lowest bit
+ * </pre>
+ * Integers are LITTLE-ENDIAN and so are the hashes, like
+ * everywhere else in MerkleTree.
+ *
+ * Checking the proof rebuilds the root in one pass over
+ * the flags and hashes. A right child equal to its left
+ * sibling is refused: it lets a block with a duplicated
+ * last subtree have the same root as the real block
+ * (CVE-2012-2459), so it could only come from a forged proof.
+ */
+public class PartialMerkleTree {
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+
+	private final int transactions;    // the number of transactions in the block
+	private final byte[] hashes;       // the hashes packed 32 bytes apiece in LITTLE-ENDIAN order
+	private final int hashCount;       // the number of hashes in hashes
+	private final boolean[] flags;     // the flag bits in the order they are walked
+
+
+	//----------------Constructor---------------------------------------------------------------//
+	private PartialMerkleTree(int transactions, byte[] hashes, int hashCount, boolean[] flags) {
+		this.transactions = transactions;
+		this.hashes = hashes;
+		this.hashCount = hashCount;
+		this.flags = flags;
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+
+
+	//----------------Public Methods-------------------------------------------------//
+
+	/**
+	 * Builds the proof for some of the transactions of a
+	 * tree. The hashes come from the levels of the tree,
+	 * which tree.getLevels() computes the first time it is
+	 * called and then shares, so proofs after the first
+	 * from the same tree hash nothing.
+	 *
+	 * @param tree the tree of the whole block
+	 * @param indices the leaf indices of the transactions
+	 * to prove, in any order
+	 * @return the proof
+	 * @throws IndexOutOfBoundsException if an index is
+	 * not a leaf of the tree
+	 * @throws IllegalArgumentException if the tree is empty
+	 */
+	public static PartialMerkleTree build(MerkleTree tree, int... indices) {
+		int size = tree.size();
+		if (size == 0) {
+			throw new IllegalArgumentException("no transactions to prove");
+		}
+		boolean[] match = new boolean[size];
+		for (int index : indices) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("no leaf " + index + " in a tree of " + size);
+			}
+			match[index] = true;
+		}
+
+		Builder builder = new Builder(tree.getLevels(), size, match);
+		builder.build(builder.levels.length - 1, 0);
+		return new PartialMerkleTree(size, builder.hashes, builder.hashCount,
+		                             Arrays.copyOf(builder.flags, builder.flagCount));
+	}
+
+	/**
+	 * Reads a proof in the wire format.
+	 *
+	 * @param data the serialized proof
+	 * @return the proof
+	 * @throws IllegalArgumentException if data is cut
+	 * short or has bytes left over
+	 */
+	public static PartialMerkleTree parse(byte[] data) {
+		ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			int transactions = buf.getInt();
+			long hashCount = readCount(buf, HASH_LEN);
+			byte[] hashes = new byte[(int) hashCount * HASH_LEN];
+			buf.get(hashes);
+			long flagBytes = readCount(buf, 1);
+			boolean[] flags = new boolean[(int) flagBytes * 8];
+			for (int i = 0; i < flags.length; i += 8) {
+				int b = buf.get();
+				for (int j = 0; j < 8; ++j) {
+					flags[i + j] = ((b >>> j) & 1) != 0;
+				}
+			}
+			if (buf.hasRemaining()) {
+				throw new IllegalArgumentException(buf.remaining() + " bytes left over after the proof");
+			}
+			return new PartialMerkleTree(transactions, hashes, (int) hashCount, flags);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("proof is cut short", e);
+		}
+	}
+
+	/**
+	 * Writes this proof in the wire format.
+	 *
+	 * @return the serialized proof
+	 */
+	public byte[] serialize() {
+		int flagBytes = (flags.length + 7) / 8;
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4 + 9 + hashCount * HASH_LEN + 9 + flagBytes);
+		ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(transactions);
+		out.write(count.array(), 0, 4);
+		writeVarInt(out, hashCount);
+		out.write(hashes, 0, hashCount * HASH_LEN);
+		writeVarInt(out, flagBytes);
+		for (int i = 0; i < flagBytes; ++i) {
+			int b = 0;
+			for (int j = 0; j < 8 && 8 * i + j < flags.length; ++j) {
+				if (flags[8 * i + j]) {
+					b |= 1 << j;
+				}
+			}
+			out.write(b);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Rebuilds the root from the proof and collects the
+	 * transactions it proves.
+	 *
+	 * @param indices if not null, gets the leaf index of
+	 * every proven transaction
+	 * @param txids if not null, gets the hex ID of every
+	 * proven transaction
+	 * @return the hex merkle root, or null if the proof
+	 * is malformed
+	 */
+	public String extractMatches(List<Integer> indices, List<String> txids) {
+		if (transactions <= 0 || transactions > MerkleTree.MAX_TRANSACTIONS
+				|| hashCount > transactions || flags.length < hashCount) {
+			return null;
+		}
+		Extractor ex = new Extractor(indices, txids);
+		int height = 0;
+		while (width(transactions, height) > 1) {
+			++height;
+		}
+		byte[] root = new byte[HASH_LEN];
+		ex.scratch = new byte[(height + 1) * 2 * HASH_LEN];
+		if (!ex.extract(height, 0, root, 0)) {
+			return null;
+		}
+		if ((ex.flagsUsed + 7) / 8 != (flags.length + 7) / 8 || ex.hashesUsed != hashCount) {
+			return null;                             // every flag byte and every hash must be used
+		}
+		return MerkleTree.encodeTxid(root, 0);
+	}
+
+	/**
+	 * Checks this proof against the root of a block.
+	 *
+	 * @param root the hex merkle root of the block
+	 * @return true if the proof is well formed and leads
+	 * to root
+	 */
+	public boolean verify(String root) {
+		String computed = extractMatches(null, null);
+		return computed != null && computed.equalsIgnoreCase(root);
+	}
+
+	/** @return the number of transactions in the block */
+	public int getTransactionCount() { return transactions; }
+
+	/** @return the number of hashes in the proof */
+	public int getHashCount() { return hashCount; }
+
+	/** @return the number of flag bits in the proof, rounded up to whole bytes once parsed */
+	public int getFlagCount() { return flags.length; }
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * @return the number of nodes on a level of a tree
+	 * of count leaves
+	 */
+	private static int width(int count, int height) {
+		return (int) ((count + (1L << height) - 1) >>> height);
+	}
+
+	private static long readCount(ByteBuffer buf, int itemLen) {
+		long count = TransactionHasher.readVarInt(buf, buf.position());
+		buf.position(buf.position() + TransactionHasher.varIntSize(buf, buf.position()));
+		if (count < 0 || count > buf.remaining() / itemLen) {
+			throw new IllegalArgumentException("proof is cut short");
+		}
+		return count;
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value) {
+		if (value < 0xfd) {
+			out.write(value);
+		} else if (value <= 0xffff) {
+			out.write(0xfd);
+			out.write(value);
+			out.write(value >>> 8);
+		} else {
+			out.write(0xfe);
+			for (int i = 0; i < 32; i += 8) {
+				out.write(value >>> i);
+			}
+		}
+	}
+
+
+	//----------------Nested Builder Class-----------------------------------------//
+	/**
+	 * The state of building a proof from the levels of a tree.
+	 */
+	private static final class Builder {
+		private final byte[][] levels;
+		private final int size;
+		private final boolean[] match;
+		private byte[] hashes = new byte[4 * HASH_LEN];
+		private int hashCount;
+		private boolean[] flags = new boolean[64];
+		private int flagCount;
+
+		Builder(byte[][] levels, int size, boolean[] match) {
+			this.levels = levels;
+			this.size = size;
+			this.match = match;
+		}
+
+		/**
+		 * Walks the node at pos on level height.
+		 */
+		void build(int height, int pos) {
+			boolean parentOfMatch = false;
+			int to = (int) Math.min((long) (pos + 1) << height, size);
+			for (int i = pos << height; i < to && !parentOfMatch; ++i) {
+				parentOfMatch = match[i];
+			}
+			if (flagCount == flags.length) {
+				flags = Arrays.copyOf(flags, 2 * flagCount);
+			}
+			flags[flagCount++] = parentOfMatch;
+
+			if (height == 0 || !parentOfMatch) {
+				if ((hashCount + 1) * HASH_LEN > hashes.length) {
+					hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+				}
+				System.arraycopy(levels[height], pos * HASH_LEN, hashes, hashCount * HASH_LEN, HASH_LEN);
+				++hashCount;
+				return;
+			}
+			build(height - 1, 2 * pos);
+			if (2 * pos + 1 < width(size, height - 1)) {
+				build(height - 1, 2 * pos + 1);
+			}
+		}
+	}
+	//------------End Nested Builder Class------------------------------------//
+
+
+	//----------------Nested Extractor Class-----------------------------------------//
+	/**
+	 * The state of rebuilding the root from a proof.
+	 */
+	private final class Extractor {
+		private final List<Integer> indices;
+		private final List<String> txids;
+		private final DoubleSha256 sha = DoubleSha256.get();
+		private byte[] scratch;            // two child hashes for every level
+		private int flagsUsed;
+		private int hashesUsed;
+
+		Extractor(List<Integer> indices, List<String> txids) {
+			this.indices = indices;
+			this.txids = txids;
+		}
+
+		/**
+		 * Rebuilds the hash of the node at pos on level
+		 * height into out at outOff.
+		 *
+		 * @return false if the proof is malformed
+		 */
+		boolean extract(int height, int pos, byte[] out, int outOff) {
+			if (flagsUsed >= flags.length) {
+				return false;                          // ran out of flags
+			}
+			boolean parentOfMatch = flags[flagsUsed++];
+			if (height == 0 || !parentOfMatch) {
+				if (hashesUsed >= hashCount) {
+					return false;                      // ran out of hashes
+				}
+				System.arraycopy(hashes, hashesUsed * HASH_LEN, out, outOff, HASH_LEN);
+				++hashesUsed;
+				if (height == 0 && parentOfMatch) {
+					if (indices != null) {
+						indices.add(pos);
+					}
+					if (txids != null) {
+						txids.add(MerkleTree.encodeTxid(out, outOff));
+					}
+				}
+				return true;
+			}
+
+			int left = height * 2 * HASH_LEN;          // where the children of this level go
+			int right = left + HASH_LEN;
+			if (!extract(height - 1, 2 * pos, scratch, left)) {
+				return false;
+			}
+			if (2 * pos + 1 < width(transactions, height - 1)) {
+				if (!extract(height - 1, 2 * pos + 1, scratch, right)) {
+					return false;
+				}
+				if (Arrays.equals(scratch, left, right, scratch, right, right + HASH_LEN)) {
+					return false;                      // a duplicated subtree, CVE-2012-2459
+				}
+			} else {
+				System.arraycopy(scratch, left, scratch, right, HASH_LEN);   // an odd last node is paired with itself
+			}
+			sha.hashPair(scratch, left, scratch, right, out, outOff);
+			return true;
+		}
+	}
+	//------------End Nested Extractor Class------------------------------------//
+}
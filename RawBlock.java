@@ -0,0 +1,183 @@
+package MerkleTreeVerify;
+import java.nio.ByteBuffer;
+
+
+/**
+ * This class is one serialized bitcoin block, usually 
+ * a view into a memory mapped blk*.dat file. The header 
+ * fields are read in place and the transaction IDs are
+ * worked out the first time they are asked for by double
+ * sha256 hashing each serialized transaction.
+ * 
+ * The block number is not stored in a block, it is taken
+ * from the height the coinbase transaction must start 
+ * with (BIP 34), which only blocks from version 2 on have.
+ */
+public class RawBlock implements BlockSource {
+	static final int HEADER_LEN = 80;             // the size of a block header
+	private static final int ROOT_OFFSET = 36;    // where in the header the merkle root is
+	
+	private final ByteBuffer data;                // the serialized block, LITTLE-ENDIAN, starting at the header
+	private final int txCount;                    // the number of transactions
+	private final int firstTx;                    // where the first transaction starts
+	private byte[] transactionHashes;             // the transaction IDs, worked out when first needed
+	private String[] transactionIDs;              // the hex transaction IDs, made when first asked for
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	/**
+	 * Constructs a RawBlock over serialized block data.
+	 * 
+	 * @param data the block starting at its header, must 
+	 * be LITTLE-ENDIAN and is owned by this block from now on
+	 */
+	public RawBlock(ByteBuffer data) {
+		if (data.limit() < HEADER_LEN + 1) {
+			throw new IllegalArgumentException("too short for a block: " + data.limit() + " bytes");
+		}
+		this.data = data;
+		long count = TransactionHasher.readVarInt(data, HEADER_LEN);
+		if (count < 1 || count > data.limit()) {
+			throw new IllegalArgumentException("bad transaction count: " + count);
+		}
+		txCount = (int) count;
+		firstTx = HEADER_LEN + TransactionHasher.varIntSize(data, HEADER_LEN);
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * This method returns the height the coinbase
+	 * transaction starts with.
+	 * 
+	 * @return the block number, or -1 for a block from
+	 * before BIP 34
+	 * @throws IllegalArgumentException if the coinbase 
+	 * runs past the end of the data
+	 */
+	@Override
+	public int getBlockNumber() {
+		if (getVersion() < 2) {
+			return -1;
+		}
+		int pos = firstTx + 4;                                      // skip the version
+		TransactionHasher.require(data, pos, 2);
+		if (data.get(pos) == 0 && data.get(pos + 1) != 0) {
+			pos += 2;                                               // skip the segwit marker and flag
+		}
+		pos += TransactionHasher.varIntSize(data, pos) + 36;        // skip the input count and the null outpoint
+		pos += TransactionHasher.varIntSize(data, pos);             // skip the script length
+		TransactionHasher.require(data, pos, 1);
+		int push = data.get(pos) & 0xff;                            // the height is pushed first
+		if (push >= 0x51 && push <= 0x60) {
+			return push - 0x50;                                     // heights 1 to 16 are pushed as OP_1 to OP_16
+		}
+		if (push < 1 || push > 4) {
+			return -1;
+		}
+		TransactionHasher.require(data, pos, push + 1);
+		int height = 0;
+		for (int i = push; i >= 1; --i) {
+			height = (height << 8) | (data.get(pos + i) & 0xff);
+		}
+		return height;
+	}
+	
+	/**
+	 * @return the hex merkle root from the header
+	 */
+	@Override
+	public String getMerkleRoot() {
+		byte[] root = new byte[MerkleTree.HASH_LEN];
+		for (int i = 0; i < root.length; ++i) {
+			root[i] = data.get(ROOT_OFFSET + i);
+		}
+		return MerkleTree.encodeTxid(root, 0);
+	}
+	
+	/**
+	 * @return the hex hash of this block
+	 */
+	@Override
+	public String getBlockHash() {
+		byte[] hash = new byte[MerkleTree.HASH_LEN];
+		ByteBuffer header = data.duplicate();
+		header.position(0).limit(HEADER_LEN);
+		DoubleSha256 sha = DoubleSha256.get();
+		sha.update(header);
+		sha.finish(hash, 0);
+		return MerkleTree.encodeTxid(hash, 0);
+	}
+	
+	/**
+	 * @return the block version from the header
+	 */
+	public int getVersion() { return data.getInt(0); }
+	
+	/**
+	 * Copies the 80 byte header, for a HeaderChainVerifier.
+	 * 
+	 * @param dst the array to copy into
+	 * @param off where in dst to copy to
+	 */
+	public void getHeader(byte[] dst, int off) { data.get(0, dst, off, HEADER_LEN); }
+	
+	@Override
+	public synchronized byte[] getTransactionHashes() {
+		if (transactionHashes == null) {
+			long start = System.nanoTime();
+			byte[] hashes = new byte[txCount * MerkleTree.HASH_LEN];
+			ByteBuffer txs = data.duplicate().order(data.order());  // the hasher moves the position and limit
+			int pos = firstTx;
+			try {
+				for (int i = 0; i < txCount; ++i) {
+					pos = TransactionHasher.txid(txs, pos, hashes, i * MerkleTree.HASH_LEN);
+				}
+			} catch (RuntimeException e) {                          // a transaction runs past the end of the block
+				Metrics.count(Metrics.Counter.PARSE_FAILURES);
+				throw e;
+			}
+			transactionHashes = hashes;
+			Metrics.registry().increment(Metrics.Counter.BYTES_PARSED, data.limit());
+			Metrics.stageDone(Metrics.Stage.PARSE, start);
+		}
+		return transactionHashes;
+	}
+	
+	@Override
+	public int getTransactionCount() { return txCount; }
+	
+	/**
+	 * @return the transaction count at the start of the
+	 * block, the same as getTransactionCount()
+	 */
+	@Override
+	public int getDeclaredTransactionCount() { return txCount; }
+	
+	/**
+	 * @return 0, a transaction that can't be read makes
+	 * getTransactionHashes() throw instead
+	 */
+	@Override
+	public int getMalformedCount() { return 0; }
+	
+	/**
+	 * @return null, a raw block is already in hand
+	 */
+	@Override
+	public Exception getFetchError() { return null; }
+	
+	@Override
+	public synchronized String[] getTransactionIDs() {
+		if (transactionIDs == null) {
+			byte[] hashes = getTransactionHashes();
+			String[] ids = new String[txCount];
+			for (int i = 0; i < txCount; ++i) {
+				ids[i] = MerkleTree.encodeTxid(hashes, i * MerkleTree.HASH_LEN);
+			}
+			transactionIDs = ids;
+		}
+		return transactionIDs;
+	}
+}
@@ -0,0 +1,121 @@
+package MerkleTreeVerify;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This class reads the blocks out of a Bitcoin Core 
+ * blk*.dat file. The file is memory mapped and each block
+ * is handed out as a RawBlock that views its part of the
+ * mapping, nothing is copied onto the heap. Verifying
+ * blocks this way needs no network and goes as fast as
+ * the disk.
+ * 
+ * A blk*.dat file is a run of records, each a 4 byte 
+ * network magic, a 4 byte LITTLE-ENDIAN block size and
+ * the serialized block. The unused tail of the file is
+ * zero filled, reading stops at the first zero magic.
+ * Reading also stops at a record that can't be a block,
+ * too short for a header and transaction count or giving
+ * a count RawBlock would refuse, so the iterator never 
+ * throws part way through a file.
+ */
+public class RawBlockFile implements Iterable<RawBlock>, Closeable {
+	private final FileChannel channel;     // the open blk*.dat file
+	private final MappedByteBuffer map;    // the whole file mapped read only
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	/**
+	 * Opens and maps a blk*.dat file.
+	 * 
+	 * @param file the path of the file
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public RawBlockFile(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		map.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * @return an iterator over the blocks in the file, in
+	 * the order they are stored (not block number order)
+	 */
+	@Override
+	public Iterator<RawBlock> iterator() {
+		return new Iterator<RawBlock>() {
+			private int pos = 0;                  // the start of the next record
+			
+			@Override
+			public boolean hasNext() {
+				if (pos + 8 > map.limit() || map.getInt(pos) == 0) {
+					return false;                 // the end of the file or its zero filled tail
+				}
+				long size = map.getInt(pos + 4) & 0xffffffffL;
+				if (pos + 8 + size > map.limit()) {
+					return false;                 // a block cut off at the end is left out
+				}
+				return isBlock(pos + 8, (int) size);
+			}
+			
+			@Override
+			public RawBlock next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int size = map.getInt(pos + 4);
+				ByteBuffer view = map.duplicate();
+				view.position(pos + 8).limit(pos + 8 + size);
+				pos += 8 + size;
+				return new RawBlock(view.slice().order(ByteOrder.LITTLE_ENDIAN));
+			}
+			
+			@Override
+			public void remove() { throw new UnsupportedOperationException(); }
+		};
+	}
+	
+	/**
+	 * Closes the file. Blocks already handed out can
+	 * still be read.
+	 */
+	@Override
+	public void close() throws IOException { channel.close(); }
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	/**
+	 * @return true if the size bytes at start hold a 
+	 * header and a transaction count RawBlock takes
+	 */
+	private boolean isBlock(int start, int size) {
+		if (size < RawBlock.HEADER_LEN + 1) {
+			return false;
+		}
+		ByteBuffer record = map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		record.limit(start + size);
+		try {
+			long count = TransactionHasher.readVarInt(record, start + RawBlock.HEADER_LEN);
+			return count >= 1 && count <= size;
+		} catch (IllegalArgumentException e) {
+			return false;                         // the count runs past the end of the record
+		}
+	}
+}
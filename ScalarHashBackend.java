@@ -0,0 +1,22 @@
+package MerkleTreeVerify;
+
+
+/**
+ * This class hashes a level one message at a time with
+ * the JDK's sha256 MessageDigest, which the JVM already 
+ * runs on the CPU's SHA instructions where there are any.
+ */
+final class ScalarHashBackend implements HashBackend {
+	
+	@Override
+	public void hashLevel(byte[] src, int srcOff, int count, byte[] dst, int dstOff) {
+		DoubleSha256 sha = DoubleSha256.get();
+		for (int i = 0; i < count; ++i) {
+			sha.hash(src, srcOff + 2 * i * MerkleTree.HASH_LEN, 2 * MerkleTree.HASH_LEN,
+			         dst, dstOff + i * MerkleTree.HASH_LEN);
+		}
+	}
+	
+	@Override
+	public String name() { return "scalar"; }
+}
@@ -0,0 +1,364 @@
+package MerkleTreeVerify;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * This class computes transaction IDs from serialized
+ * bitcoin transactions, so the Merkle Root can be checked 
+ * against what the transactions really hash to rather than
+ * IDs taken on trust. The transaction ID is the double
+ * sha256 of the transaction without its segwit marker, 
+ * flag and witness data, so for a segwit transaction the
+ * parts around the witness data are fed to the digest one 
+ * after the other instead of being copied together.
+ * 
+ * An instance hashes a whole block's worth of transactions
+ * into arrays it keeps and reuses for the next block, and
+ * can also work out the witness transaction IDs (wtxids),
+ * their Merkle Root and the witness commitment the coinbase
+ * must hold (BIP 141). An instance is meant for one thread.
+ */
+public final class TransactionHasher {
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	
+	private final boolean witness;      // whether wtxids are computed too
+	private byte[] txids = new byte[0]; // the transaction IDs of the last transactions hashed
+	private byte[] wtxids = new byte[0];// the witness transaction IDs of the last transactions hashed
+	private byte[] scratch = new byte[0];// the levels of the tree while a root is computed
+	private int count;                  // the number of transactions last hashed
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	/**
+	 * Constructs a TransactionHasher.
+	 * 
+	 * @param witness true to compute the witness 
+	 * transaction IDs along with the transaction IDs
+	 */
+	public TransactionHasher(boolean witness) {
+		this.witness = witness;
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Hashes count transactions stored one after the 
+	 * other from pos in buf, replacing whatever was hashed
+	 * before. buf must be LITTLE-ENDIAN, its position and
+	 * limit are left alone.
+	 * 
+	 * @param buf the buffer holding the transactions
+	 * @param pos where in buf the first transaction starts
+	 * @param count the number of transactions
+	 * @return the position just after the last transaction
+	 */
+	public int hash(ByteBuffer buf, int pos, int count) {
+		ensureCapacity(count);
+		ByteBuffer view = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < count; ++i) {
+			pos = hash(view, pos, txids, i * HASH_LEN, witness ? wtxids : null, i * HASH_LEN);
+		}
+		finished(count);
+		return pos;
+	}
+	
+	/**
+	 * Hashes serialized transactions, replacing whatever 
+	 * was hashed before.
+	 * 
+	 * @param rawTxs one serialized transaction per element
+	 */
+	public void hash(byte[][] rawTxs) {
+		ensureCapacity(rawTxs.length);
+		for (int i = 0; i < rawTxs.length; ++i) {
+			ByteBuffer view = ByteBuffer.wrap(rawTxs[i]).order(ByteOrder.LITTLE_ENDIAN);
+			int end = hash(view, 0, txids, i * HASH_LEN, witness ? wtxids : null, i * HASH_LEN);
+			if (end != rawTxs[i].length) {
+				throw new IllegalArgumentException("transaction " + i + " has " + (rawTxs[i].length - end) + " bytes left over");
+			}
+		}
+		finished(rawTxs.length);
+	}
+	
+	/**
+	 * @return the number of transactions last hashed
+	 */
+	public int getCount() { return count; }
+	
+	/**
+	 * @return the transaction IDs packed 32 bytes apiece in
+	 * LITTLE-ENDIAN order. The array is reused by the next
+	 * hash() and may be longer than getCount() hashes.
+	 */
+	public byte[] getTxids() { return txids; }
+	
+	/**
+	 * @return the witness transaction IDs, laid out like
+	 * getTxids(), the coinbase's is all zeros
+	 * @throws IllegalStateException if wtxids are not computed
+	 */
+	public byte[] getWtxids() {
+		checkWitness();
+		return wtxids;
+	}
+	
+	/**
+	 * @return the hex Merkle Root of the transaction IDs,
+	 * or null if there are none
+	 */
+	public String getMerkleRoot() {
+		return (count == 0) ? null : root(txids);
+	}
+	
+	/**
+	 * @return a MerkleTree of the transaction IDs, holding
+	 * its own copy of them
+	 */
+	public MerkleTree toMerkleTree() {
+		return new MerkleTree(Arrays.copyOf(txids, count * HASH_LEN), count);
+	}
+	
+	/**
+	 * @return the hex Merkle Root of the witness 
+	 * transaction IDs, or null if there are none
+	 * @throws IllegalStateException if wtxids are not computed
+	 */
+	public String getWitnessMerkleRoot() {
+		checkWitness();
+		return (count == 0) ? null : root(wtxids);
+	}
+	
+	/**
+	 * Works out the witness commitment, the double sha256
+	 * of the witness Merkle Root followed by the witness 
+	 * reserved value from the coinbase's witness.
+	 * 
+	 * @param reservedValue the 32 byte witness reserved value
+	 * @return the 32 byte commitment, in the byte order it
+	 * appears in the coinbase output
+	 * @throws IllegalStateException if wtxids are not computed
+	 * or there are no transactions
+	 */
+	public byte[] getWitnessCommitment(byte[] reservedValue) {
+		checkWitness();
+		if (count == 0) {
+			throw new IllegalStateException("no transactions have been hashed");
+		}
+		if (reservedValue.length != HASH_LEN) {
+			throw new IllegalArgumentException("the witness reserved value must be 32 bytes");
+		}
+		byte[] commitment = new byte[HASH_LEN];
+		computeRoot(wtxids, commitment);
+		DoubleSha256.get().hashPair(commitment, 0, reservedValue, 0, commitment, 0);
+		return commitment;
+	}
+	
+	//----------------Package Methods-------------------------------------------------//
+	
+	/**
+	 * Computes the transaction ID of the transaction that
+	 * starts at pos in buf. buf must be LITTLE-ENDIAN, its
+	 * position is changed.
+	 * 
+	 * @param buf the buffer holding the transaction
+	 * @param pos where in buf the transaction starts
+	 * @param out the array the 32 byte LITTLE-ENDIAN ID is written to
+	 * @param outOff where in out to write
+	 * @return the position just after the transaction
+	 */
+	static int txid(ByteBuffer buf, int pos, byte[] out, int outOff) {
+		return hash(buf, pos, out, outOff, null, 0);
+	}
+	
+	/**
+	 * Computes the transaction ID and, when wtxid is not 
+	 * null, the witness transaction ID of the transaction
+	 * that starts at pos in buf. The witness transaction 
+	 * ID hashes the whole transaction, witness data and 
+	 * all. buf must be LITTLE-ENDIAN, its position is changed.
+	 * 
+	 * @return the position just after the transaction
+	 * @throws IllegalArgumentException if the transaction
+	 * runs past the end of the data
+	 */
+	static int hash(ByteBuffer buf, int pos, byte[] txid, int txidOff, byte[] wtxid, int wtxidOff) {
+		int start = pos;
+		require(buf, pos, 6);                            // the version and what may be the marker and flag
+		boolean segwit = buf.get(pos + 4) == 0 && buf.get(pos + 5) != 0;  // a zero input count is the segwit marker
+		int body = pos + (segwit ? 6 : 4);                                 // the inputs start after the version (and marker and flag)
+		
+		// skip the inputs
+		pos = body;
+		long inputs = readVarInt(buf, pos);
+		pos += varIntSize(buf, pos);
+		for (long i = 0; i < inputs; ++i) {
+			require(buf, pos, 36);
+			pos += 36;                                   // previous transaction ID and output index
+			pos = skipScript(buf, pos);
+			require(buf, pos, 4);
+			pos += 4;                                    // sequence
+		}
+		
+		// skip the outputs
+		long outputs = readVarInt(buf, pos);
+		pos += varIntSize(buf, pos);
+		for (long i = 0; i < outputs; ++i) {
+			require(buf, pos, 8);
+			pos += 8;                                    // value
+			pos = skipScript(buf, pos);
+		}
+		int bodyEnd = pos;
+		
+		// skip the witness data
+		if (segwit) {
+			for (long i = 0; i < inputs; ++i) {
+				long items = readVarInt(buf, pos);
+				pos += varIntSize(buf, pos);
+				for (long j = 0; j < items; ++j) {
+					pos = skipScript(buf, pos);
+				}
+			}
+		}
+		require(buf, pos, 4);
+		int lockTime = pos;
+		int end = lockTime + 4;
+		int limit = buf.limit();
+		
+		DoubleSha256 sha = DoubleSha256.get();
+		if (segwit) {
+			feed(sha, buf, start, start + 4);            // version
+			feed(sha, buf, body, bodyEnd);               // inputs and outputs
+			feed(sha, buf, lockTime, end);               // lock time
+		} else {
+			feed(sha, buf, start, end);                  // the whole transaction
+		}
+		sha.finish(txid, txidOff);
+		
+		if (wtxid != null) {
+			if (segwit) {
+				feed(sha, buf, start, end);              // the whole transaction, witness included
+				sha.finish(wtxid, wtxidOff);
+			} else {
+				System.arraycopy(txid, txidOff, wtxid, wtxidOff, HASH_LEN);  // the same without witness data
+			}
+		}
+		buf.limit(limit);
+		return end;
+	}
+	
+	/**
+	 * Reads a bitcoin variable length integer.
+	 * 
+	 * @throws IllegalArgumentException if it runs past 
+	 * the end of the data
+	 */
+	static long readVarInt(ByteBuffer buf, int pos) {
+		require(buf, pos, varIntSize(buf, pos));
+		int first = buf.get(pos) & 0xff;
+		switch (first) {
+		case 0xfd: return buf.getShort(pos + 1) & 0xffff;
+		case 0xfe: return buf.getInt(pos + 1) & 0xffffffffL;
+		case 0xff: return buf.getLong(pos + 1);
+		default:   return first;
+		}
+	}
+	
+	/**
+	 * @return the number of bytes the variable length 
+	 * integer at pos takes up
+	 * @throws IllegalArgumentException if pos is past the
+	 * end of the data
+	 */
+	static int varIntSize(ByteBuffer buf, int pos) {
+		require(buf, pos, 1);
+		int first = buf.get(pos) & 0xff;
+		switch (first) {
+		case 0xfd: return 3;
+		case 0xfe: return 5;
+		case 0xff: return 9;
+		default:   return 1;
+		}
+	}
+	
+	/**
+	 * Checks that n bytes starting at pos are inside the
+	 * data, so the absolute gets that read them can't 
+	 * throw IndexOutOfBoundsException.
+	 * 
+	 * @throws IllegalArgumentException if they are not
+	 */
+	static void require(ByteBuffer buf, long pos, int n) {
+		if (pos < 0 || pos + n > buf.limit()) {
+			throw new IllegalArgumentException("a transaction runs past the end of the data at " + pos);
+		}
+	}
+	
+	//------------------Private Methods--------------------------------------------------------//
+	
+	/**
+	 * @return the position after the length prefixed 
+	 * script at pos
+	 */
+	private static int skipScript(ByteBuffer buf, int pos) {
+		long len = readVarInt(buf, pos);
+		long end = pos + varIntSize(buf, pos) + len;
+		if (len < 0 || end > buf.limit()) {
+			throw new IllegalArgumentException("a script runs past the end of the data at " + pos);
+		}
+		return (int) end;
+	}
+	
+	private static void feed(DoubleSha256 sha, ByteBuffer buf, int from, int to) {
+		buf.limit(to);
+		buf.position(from);
+		sha.update(buf);
+	}
+	
+	/**
+	 * Grows the reusable arrays to hold count hashes.
+	 */
+	private void ensureCapacity(int count) {
+		this.count = 0;                                  // nothing is valid until hashing finishes
+		int bytes = Math.max(1, count) * HASH_LEN;
+		if (txids.length < bytes) {
+			txids = new byte[bytes];
+			wtxids = witness ? new byte[bytes] : wtxids;
+			scratch = new byte[((Math.max(1, count) + 1) / 2) * HASH_LEN];
+		}
+	}
+	
+	/**
+	 * Marks count transactions as hashed. The coinbase
+	 * commits to the other wtxids so its own is all zeros.
+	 */
+	private void finished(int count) {
+		if (witness && count > 0) {
+			Arrays.fill(wtxids, 0, HASH_LEN, (byte) 0);
+		}
+		this.count = count;
+	}
+	
+	/**
+	 * Computes the Merkle Root of the first count hashes 
+	 * of leaves into the first 32 bytes of dst.
+	 */
+	private void computeRoot(byte[] leaves, byte[] dst) {
+		MerkleTree.computeRoot(leaves, count, scratch);
+		System.arraycopy(scratch, 0, dst, 0, HASH_LEN);
+	}
+	
+	private String root(byte[] leaves) {
+		byte[] root = new byte[HASH_LEN];
+		computeRoot(leaves, root);
+		return MerkleTree.encodeTxid(root, 0);
+	}
+	
+	private void checkWitness() {
+		if (!witness) {
+			throw new IllegalStateException("this hasher does not compute wtxids");
+		}
+	}
+}
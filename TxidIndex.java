@@ -0,0 +1,435 @@
+package MerkleTreeVerify;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * This class is an index on disk from transaction ID to
+ * the block and leaf index holding it, so asking whether
+ * a transaction is in any of many blocks is one lookup
+ * instead of building the tree of every block. Every block
+ * added also has its levels written to a MerkleLevelStore,
+ * so a lookup turns straight into an inclusion proof
+ * against the root of that block.
+ *
+ * The index lives in a directory:
+ * <pre>
+ *   txids.idx          the hash table
+ *   levels/HEIGHT.mklv the levels of the block at HEIGHT
+ * </pre>
+ * The hash table is an open addressing table with linear
+ * probing, memory mapped in segments, laid out as:
+ * <pre>
+ *   magic      4 bytes  "TXIX"
+ *   version    int      1
+ *   slots      long     the number of slots, a power of two
+ *   entries    long     the number of slots in use
+ *   lowest     int      the lowest height added, -1 if none
+ *   highest    int      the highest height added, -1 if none
+ *   slots      40 bytes apiece: the txid, height + 1 and leaf index
+ * </pre>
+ * The integers are BIG-ENDIAN and the txids LITTLE-ENDIAN,
+ * like MerkleLevelStore. A height of 0 marks an empty
+ * slot, which is what a new file is filled with. The
+ * transaction IDs are already random so their first 8
+ * bytes are used as the hash. A txid found in more than
+ * one block, like the duplicate coinbases from before
+ * BIP 30, has a slot for each block. A lookup only
+ * answers with a slot once the leaf at that index in the
+ * levels of the block is the txid, so a slot left behind
+ * by a block that was replaced is never a false positive.
+ */
+public class TxidIndex implements Closeable {
+	private static final int MAGIC = 0x54584958;          // "TXIX"
+	private static final int VERSION = 1;
+	private static final int HEADER_LEN = 32;
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	private static final int SLOT_LEN = HASH_LEN + 8;     // the txid, height + 1 and leaf index
+	private static final int SEGMENT_BITS = 24;           // 2^24 slots, 640 MB, per mapping
+	private static final int SEGMENT_SLOTS = 1 << SEGMENT_BITS;
+	private static final double MAX_LOAD = 0.75;          // the fullest the table may get
+	private static final int OPEN_STORES = 64;            // the most level stores kept open
+
+	private final Path dir;                               // the directory of the index
+	private final FileChannel channel;                    // the open table file
+	private final MappedByteBuffer header;                // the header mapped read write
+	private final MappedByteBuffer[] segments;            // the slots mapped read write
+	private final long slots;                             // the number of slots
+	private final long mask;                              // slots - 1
+	private long entries;                                 // the number of slots in use
+	private int lowest, highest;                          // the heights added
+	private final LinkedHashMap<Integer, MerkleLevelStore> stores;   // level stores opened for proofs, by height
+	private final byte[] probe = new byte[HASH_LEN];      // the txid being looked up, decoded
+	private final byte[] leaf = new byte[HASH_LEN];       // the leaf read back from a level store
+
+
+	//----------------Nested Location Class-----------------------------------------//
+	/**
+	 * Where a transaction is.
+	 */
+	public static final class Location {
+		private final int height;
+		private final int index;
+
+		Location(int height, int index) {
+			this.height = height;
+			this.index = index;
+		}
+
+		/** @return the height of the block holding the transaction */
+		public int getHeight() { return height; }
+
+		/** @return the leaf index of the transaction in its block */
+		public int getIndex() { return index; }
+
+		@Override
+		public String toString() { return "block " + height + " leaf " + index; }
+	}
+	//------------End Nested Location Class------------------------------------//
+
+
+	//----------------Constructor---------------------------------------------------------------//
+	private TxidIndex(Path dir, FileChannel channel) throws IOException {
+		this.dir = dir;
+		this.channel = channel;
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LEN);
+		if (header.getInt(0) != MAGIC) {
+			throw new IOException("not a txid index");
+		}
+		if (header.getInt(4) != VERSION) {
+			throw new IOException("unknown txid index version " + header.getInt(4));
+		}
+		slots = header.getLong(8);
+		entries = header.getLong(16);
+		lowest = header.getInt(24);
+		highest = header.getInt(28);
+		if (slots < 1 || Long.bitCount(slots) != 1 || HEADER_LEN + slots * SLOT_LEN > channel.size()) {
+			throw new IOException("corrupt txid index header");
+		}
+		mask = slots - 1;
+
+		segments = new MappedByteBuffer[(int) ((slots + SEGMENT_SLOTS - 1) >>> SEGMENT_BITS)];
+		for (int i = 0; i < segments.length; ++i) {
+			long first = (long) i << SEGMENT_BITS;
+			long n = Math.min(SEGMENT_SLOTS, slots - first);
+			segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_LEN + first * SLOT_LEN, n * SLOT_LEN);
+		}
+
+		stores = new LinkedHashMap<Integer, MerkleLevelStore>(16, 0.75f, true) {   // access order, eldest is least recently used
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, MerkleLevelStore> eldest) {
+				if (size() <= OPEN_STORES) {
+					return false;
+				}
+				try {
+					eldest.getValue().close();
+				} catch (IOException e) {
+					// the mapping stays readable until it is collected, nothing to do
+				}
+				return true;
+			}
+		};
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+
+
+	//----------------Public Methods-------------------------------------------------//
+
+	/**
+	 * Creates an empty index in dir, replacing any index
+	 * already there.
+	 *
+	 * @param dir the directory, made if it does not exist
+	 * @param capacity the most transactions the index
+	 * will hold
+	 * @return the open index
+	 * @throws IOException if the files can't be made
+	 */
+	public static TxidIndex create(Path dir, long capacity) throws IOException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("the capacity must be at least one: " + capacity);
+		}
+		long slots = Long.highestOneBit((long) Math.ceil(capacity / MAX_LOAD));
+		if (slots < capacity / MAX_LOAD) {
+			slots <<= 1;
+		}
+		Files.createDirectories(dir.resolve("levels"));
+		Path file = dir.resolve("txids.idx");
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		                                        StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer h = out.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LEN);
+			h.putInt(MAGIC).putInt(VERSION).putLong(slots).putLong(0).putInt(-1).putInt(-1);
+			h.force();
+			out.write(ByteBuffer.allocate(1), HEADER_LEN + slots * SLOT_LEN - 1);   // the slots read back as zero, empty
+		}
+		return open(dir);
+	}
+
+	/**
+	 * Opens an index made by create().
+	 *
+	 * @param dir the directory of the index
+	 * @return the open index
+	 * @throws IOException if the files can't be read or
+	 * are not an index
+	 */
+	public static TxidIndex open(Path dir) throws IOException {
+		FileChannel channel = FileChannel.open(dir.resolve("txids.idx"), StandardOpenOption.READ,
+		                                       StandardOpenOption.WRITE);
+		try {
+			return new TxidIndex(dir, channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds every transaction of a block and writes its
+	 * levels. Adding another block at a height already
+	 * added replaces the levels, the slots of transactions
+	 * only the old block had stay in the table but are no
+	 * longer found.
+	 *
+	 * @param height the height of the block
+	 * @param tree the tree of the block
+	 * @throws IOException if the levels can't be written
+	 * @throws IllegalStateException if the index is full
+	 */
+	public synchronized void addBlock(int height, MerkleTree tree) throws IOException {
+		if (height < 0) {
+			throw new IllegalArgumentException("no height for the block");
+		}
+		if (tree.size() == 0) {
+			return;
+		}
+		if (entries + tree.size() > slots * MAX_LOAD) {
+			throw new IllegalStateException("the txid index is full, create it with a larger capacity");
+		}
+		MerkleLevelStore old = stores.remove(height);
+		if (old != null) {
+			old.close();
+		}
+		MerkleLevelStore.write(tree, levelFile(height));
+
+		byte[] leaves = tree.getLevels()[0];
+		for (int i = 0; i < tree.size(); ++i) {
+			put(leaves, i * HASH_LEN, height, i);
+		}
+		lowest = (lowest < 0) ? height : Math.min(lowest, height);
+		highest = Math.max(highest, height);
+		header.putLong(16, entries).putInt(24, lowest).putInt(28, highest);
+	}
+
+	/**
+	 * Adds every transaction of a block, see
+	 * addBlock(int, MerkleTree). The block is checked with
+	 * BlockVerify.verify first and only added if its 
+	 * transactions hash to its merkle root.
+	 *
+	 * @param blk the block, its block number is the height
+	 * @throws IOException if the levels can't be written
+	 * @throws IllegalArgumentException if the block does
+	 * not verify
+	 */
+	public void addBlock(BlockSource blk) throws IOException {
+		VerificationResult result = BlockVerify.verify(blk);
+		if (!result.isMatch()) {
+			throw new IllegalArgumentException("block " + result.blockNumber() + " does not verify: " + result.status()
+			                                   + ((result.detail() != null) ? " " + result.detail() : ""));
+		}
+		addBlock(result.blockNumber(), new MerkleTree(blk.getTransactionHashes(), blk.getTransactionCount()));
+	}
+
+	/**
+	 * Finds a transaction.
+	 *
+	 * @param txid the hex transaction ID
+	 * @return a block holding it, or null if it is in no
+	 * block added
+	 * @throws IOException if the levels of a block can't
+	 * be read
+	 */
+	public Location lookup(String txid) throws IOException {
+		return lookup(txid, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds a transaction in a range of blocks.
+	 *
+	 * @param txid the hex transaction ID
+	 * @param fromHeight the lowest height to look in
+	 * @param toHeight the highest height to look in
+	 * @return a block holding it, or null if it is not in 
+	 * any block added from fromHeight to toHeight
+	 * @throws IOException if the levels of a block can't
+	 * be read
+	 */
+	public synchronized Location lookup(String txid, int fromHeight, int toHeight) throws IOException {
+		MerkleTree.decodeTxid(txid, probe, 0);
+		for (long slot = home(probe, 0); ; slot = (slot + 1) & mask) {
+			MappedByteBuffer seg = segments[(int) (slot >>> SEGMENT_BITS)];
+			int pos = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_LEN;
+			int height = seg.getInt(pos + HASH_LEN) - 1;
+			if (height < 0) {
+				return null;                              // an empty slot ends the probe
+			}
+			if (height >= fromHeight && height <= toHeight && equalAt(seg, pos, probe, 0)) {
+				int index = seg.getInt(pos + HASH_LEN + 4);
+				if (holds(height, index)) {
+					return new Location(height, index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the inclusion proof of a transaction from the
+	 * levels of its block, without hashing anything.
+	 *
+	 * @param at where the transaction is
+	 * @return the proof against the root of that block
+	 * @throws IOException if the levels can't be read
+	 */
+	public synchronized MerkleProof getProof(Location at) throws IOException {
+		return store(at.height).getProof(at.index);
+	}
+
+	/**
+	 * Finds a transaction and gets its inclusion proof.
+	 *
+	 * @param txid the hex transaction ID
+	 * @return the proof, or null if it is in no block added
+	 * @throws IOException if the levels can't be read
+	 */
+	public MerkleProof getProof(String txid) throws IOException {
+		Location at = lookup(txid);
+		return (at == null) ? null : getProof(at);
+	}
+
+	/**
+	 * @param height the height of a block added
+	 * @return the hex merkle root of that block
+	 * @throws IOException if the levels can't be read
+	 */
+	public synchronized String getMerkleRoot(int height) throws IOException {
+		return store(height).getMerkleRoot();
+	}
+
+	/** @return the number of transactions in the index */
+	public synchronized long size() { return entries; }
+
+	/** @return the lowest height added, or -1 if none was */
+	public synchronized int getLowestHeight() { return lowest; }
+
+	/** @return the highest height added, or -1 if none was */
+	public synchronized int getHighestHeight() { return highest; }
+
+	/**
+	 * Writes the changes to disk.
+	 */
+	public synchronized void force() {
+		header.force();
+		for (MappedByteBuffer seg : segments) {
+			seg.force();
+		}
+	}
+
+	/**
+	 * Writes the changes to disk and closes the index and
+	 * its open level stores.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		force();
+		for (MerkleLevelStore store : stores.values()) {
+			store.close();
+		}
+		stores.clear();
+		channel.close();
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * Puts a transaction in its slot, replacing the
+	 * location of the same txid in the same block if it
+	 * is there already. The same txid in another block 
+	 * gets a slot of its own.
+	 */
+	private void put(byte[] txid, int off, int height, int index) {
+		for (long slot = home(txid, off); ; slot = (slot + 1) & mask) {
+			MappedByteBuffer seg = segments[(int) (slot >>> SEGMENT_BITS)];
+			int pos = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_LEN;
+			int stored = seg.getInt(pos + HASH_LEN);
+			boolean empty = stored == 0;
+			if (empty || (stored == height + 1 && equalAt(seg, pos, txid, off))) {
+				seg.put(pos, txid, off, HASH_LEN);
+				seg.putInt(pos + HASH_LEN, height + 1);
+				seg.putInt(pos + HASH_LEN + 4, index);
+				if (empty) {
+					++entries;
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the leaf at index in the levels of
+	 * the block at height is the txid being looked up
+	 */
+	private boolean holds(int height, int index) throws IOException {
+		MerkleLevelStore store = store(height);
+		if (index < 0 || index >= store.size()) {
+			return false;                                 // the block was replaced by a smaller one
+		}
+		store.getHash(0, index, leaf, 0);
+		return Arrays.equals(leaf, probe);
+	}
+
+	/**
+	 * @return the first slot to try for txid
+	 */
+	private long home(byte[] txid, int off) {
+		long h = 0;
+		for (int i = 7; i >= 0; --i) {
+			h = (h << 8) | (txid[off + i] & 0xff);
+		}
+		return h & mask;
+	}
+
+	private static boolean equalAt(MappedByteBuffer seg, int pos, byte[] txid, int off) {
+		for (int i = 0; i < HASH_LEN; ++i) {
+			if (seg.get(pos + i) != txid[off + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private MerkleLevelStore store(int height) throws IOException {
+		MerkleLevelStore store = stores.get(height);
+		if (store == null) {
+			store = MerkleLevelStore.open(levelFile(height));
+			stores.put(height, store);
+		}
+		return store;
+	}
+
+	private Path levelFile(int height) {
+		return dir.resolve("levels").resolve(height + ".mklv");
+	}
+}
@@ -0,0 +1,214 @@
+package MerkleTreeVerify;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class is a cache of blocks that have already been
+ * verified, keyed by block hash and block number. Blocks 
+ * are evicted least recently used first once there are 
+ * more than maxEntries of them, and any block older than 
+ * maxAgeMillis is dropped when it is next looked up. Each
+ * entry holds the computed root and the result and, when 
+ * keepTrees is set, the MerkleTree with all of its levels 
+ * so proofs for a hot block come without any hashing.
+ * 
+ * Hits, misses and evictions are counted. All of the 
+ * methods are safe to call from many threads.
+ */
+public class VerificationCache {
+	private final int maxEntries;             // the most blocks kept
+	private final long maxAgeNanos;           // how long a block is kept
+	private final boolean keepTrees;          // whether the trees are kept for proofs
+	private final LinkedHashMap<Key, Entry> entries;
+	private long hits, misses, evictions;     // the counters, guarded by this
+	
+	
+	//----------------Constructor---------------------------------------------------------------//
+	/**
+	 * Constructs an empty VerificationCache.
+	 * 
+	 * @param maxEntries the most blocks kept
+	 * @param maxAgeMillis how long a block is kept, in milliseconds
+	 * @param keepTrees true to keep the MerkleTree of every
+	 * block so proofs can be served from the cache
+	 */
+	public VerificationCache(int maxEntries, long maxAgeMillis, boolean keepTrees) {
+		if (maxEntries < 1 || maxAgeMillis < 1) {
+			throw new IllegalArgumentException("the size and age limits must be at least one");
+		}
+		this.maxEntries = maxEntries;
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);   // saturates rather than overflowing
+		this.keepTrees = keepTrees;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {   // access order, eldest is least recently used
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > VerificationCache.this.maxEntries) {
+					++evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	//-------------------End Constructor-------------------------------------------------------//
+	
+	//----------------Public Methods-------------------------------------------------//
+	
+	/**
+	 * Looks a block up.
+	 * 
+	 * @param blockHash the hex hash of the block, null always misses
+	 * @param height the block number
+	 * @return the cached entry, or null if the block is
+	 * not cached or is too old
+	 */
+	public synchronized Entry get(String blockHash, int height) {
+		if (blockHash == null) {
+			++misses;
+			return null;
+		}
+		Key key = new Key(blockHash, height);
+		Entry entry = entries.get(key);
+		if (entry != null && System.nanoTime() - entry.created > maxAgeNanos) {
+			entries.remove(key);                          // too old, drop it
+			++evictions;
+			entry = null;
+		}
+		if (entry == null) {
+			++misses;
+		} else {
+			++hits;
+		}
+		return entry;
+	}
+	
+	/**
+	 * Adds a verified block, replacing any entry already
+	 * there. Blocks without a hash are not cached, nor are
+	 * blocks whose roots differ, since a corrupted fetch
+	 * must not stop a good fetch of the same block later
+	 * from verifying.
+	 * 
+	 * @param blockHash the hex hash of the block
+	 * @param height the block number
+	 * @param computedRoot the root computed from the transactions
+	 * @param expectedRoot the root the block gave
+	 * @param tree the tree the root was computed with, only
+	 * kept when the cache keeps trees
+	 */
+	public void put(String blockHash, int height, String computedRoot, String expectedRoot, MerkleTree tree) {
+		if (blockHash == null || computedRoot == null || !computedRoot.equals(expectedRoot)) {
+			return;
+		}
+		if (keepTrees && tree != null) {
+			tree.getLevels();                             // build the levels now, outside the lock
+		}
+		Entry entry = new Entry(computedRoot, expectedRoot, keepTrees ? tree : null, System.nanoTime());
+		synchronized (this) {
+			entries.put(new Key(blockHash, height), entry);
+		}
+	}
+	
+	/**
+	 * Gets a proof for a cached block.
+	 * 
+	 * @param blockHash the hex hash of the block
+	 * @param height the block number
+	 * @param index the leaf index of the transaction
+	 * @return the proof, or null if the block or its tree
+	 * is not cached
+	 */
+	public MerkleProof getProof(String blockHash, int height, int index) {
+		Entry entry = get(blockHash, height);
+		return (entry == null || entry.getTree() == null) ? null : entry.getTree().getProof(index);
+	}
+	
+	/**
+	 * Drops every block older than the age limit.
+	 */
+	public synchronized void evictExpired() {
+		long now = System.nanoTime();
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+			if (now - it.next().created > maxAgeNanos) {
+				it.remove();
+				++evictions;
+			}
+		}
+	}
+	
+	/** @return the number of blocks cached */
+	public synchronized int size() { return entries.size(); }
+	
+	/** @return the number of lookups that found a block */
+	public synchronized long getHits() { return hits; }
+	
+	/** @return the number of lookups that found nothing */
+	public synchronized long getMisses() { return misses; }
+	
+	/** @return the number of blocks dropped for size or age */
+	public synchronized long getEvictions() { return evictions; }
+	
+	/** Drops every block, the counters are kept. */
+	public synchronized void clear() { entries.clear(); }
+	
+	//---------------Nested Classes----------------------------------//
+	
+	/**
+	 * This class holds what is cached for one block.
+	 */
+	public static class Entry {
+		private final String computedRoot;     // the root computed from the transactions
+		private final String expectedRoot;     // the root the block gave
+		private final MerkleTree tree;         // the tree with its levels, null unless trees are kept
+		private final long created;            // when the entry was made, from System.nanoTime()
+		
+		Entry(String computedRoot, String expectedRoot, MerkleTree tree, long created) {
+			this.computedRoot = computedRoot;
+			this.expectedRoot = expectedRoot;
+			this.tree = tree;
+			this.created = created;
+		}
+		
+		/** @return the root computed from the transactions */
+		public String getComputedRoot() { return computedRoot; }
+		
+		/** @return the root the block gave */
+		public String getExpectedRoot() { return expectedRoot; }
+		
+		/** @return true if the two roots are equal */
+		public boolean isVerified() { return computedRoot != null && computedRoot.equals(expectedRoot); }
+		
+		/** @return the tree, or null if it was not kept */
+		public MerkleTree getTree() { return tree; }
+	}
+	
+	/**
+	 * The block hash and block number a block is cached under.
+	 */
+	private static class Key {
+		final String blockHash;
+		final int height;
+		
+		Key(String blockHash, int height) {
+			this.blockHash = blockHash.toLowerCase();
+			this.height = height;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return height == k.height && blockHash.equals(k.blockHash);
+		}
+		
+		@Override
+		public int hashCode() { return 31 * blockHash.hashCode() + height; }
+	}
+}
@@ -0,0 +1,60 @@
+package MerkleTreeVerify;
+
+
+/**
+ * This record is the outcome of verifying one block. 
+ * Blocks that can't be verified are not thrown as 
+ * exceptions, they get a status saying why so a pipeline
+ * can route them like any other result.
+ * 
+ * @param status what happened
+ * @param blockNumber the block number, -1 if not known
+ * @param blockHash the hex block hash, null if not known
+ * @param computedRoot the root computed from the transactions,
+ * null if the block was turned away before hashing
+ * @param expectedRoot the root the block gave, null if not known
+ * @param detail what was wrong, null for MATCH and MISMATCH
+ */
+public record VerificationResult(Status status, int blockNumber, String blockHash,
+                                 String computedRoot, String expectedRoot, String detail) {
+	
+	/**
+	 * The ways verifying a block can end.
+	 */
+	public enum Status {
+		/** the computed root is the root the block gave */
+		MATCH,
+		/** the computed root is not the root the block gave */
+		MISMATCH,
+		/** a transaction ID or the root is not 64 hex digits, or a transaction could not be read */
+		MALFORMED_INPUT,
+		/** the block could not be fetched */
+		FETCH_FAILED,
+		/** the block gave a transaction count that is not the number of transactions found */
+		COUNT_MISMATCH,
+		/** the block is not in the verified header chain, see HeaderChainVerifier */
+		NOT_IN_CHAIN
+	}
+	
+	/**
+	 * @return true if the status is MATCH
+	 */
+	public boolean isMatch() { return status == Status.MATCH; }
+	
+	/**
+	 * Makes the result of a block that was turned away 
+	 * before hashing.
+	 */
+	static VerificationResult rejected(Status status, BlockSource block, String detail) {
+		return new VerificationResult(status, block.getBlockNumber(), block.getBlockHash(), null,
+		                              block.getMerkleRoot(), detail);
+	}
+	
+	/**
+	 * Makes the result of a block that could not be 
+	 * fetched at all.
+	 */
+	static VerificationResult fetchFailed(Throwable error) {
+		return new VerificationResult(Status.FETCH_FAILED, -1, null, null, null, String.valueOf(error));
+	}
+}
@@ -0,0 +1,389 @@
+package MerkleTreeVerify;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+
+/**
+ * This class is the command line tool for verifying many
+ * blocks in one run. Blocks can come from a range of
+ * heights, a list of block hashes, a block page URL, a
+ * directory of saved block pages (.html) and blk*.dat
+ * files (.dat), or block hashes and heights read one a
+ * line from stdin. With no source the most recent block
+ * is verified. The blocks go through a BatchVerify and
+ * one line is printed per block, then a summary of the
+ * throughput and latency of the run.
+ * <pre>
+ *   VerifyCli [--range FROM..TO] [--hashes HASH,...] [--url URL] [--dir DIR] [--stdin]
+ *             [--parallelism N] [--format text|jsonl|csv] [--base URI]
+ * </pre>
+ * The exit code is 0 when every block matched, 1 when one
+ * did not and 2 for bad arguments.
+ */
+public class VerifyCli {
+	private static final String USAGE =
+			"usage: VerifyCli [--range FROM..TO] [--hashes HASH,...] [--url URL] [--dir DIR] [--stdin]\n"
+			+ "                 [--parallelism N] [--format text|jsonl|csv] [--base URI]";
+
+	/**
+	 * The ways one line per block can be printed.
+	 */
+	enum Format { TEXT, JSONL, CSV }
+
+	private final List<Callable<? extends BlockSource>> sources = new ArrayList<Callable<? extends BlockSource>>();
+	private final List<Closeable> open = new ArrayList<Closeable>();   // fetchers and block files to close at the end
+	private BlockFetcher fetcher;               // made when the first source needs one
+	private URI base = BlockFetcher.DEFAULT_BASE;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private Format format = Format.TEXT;
+
+
+	//----------------Main---------------------------------------------------------------//
+	/**
+	 * Runs the tool and exits with its exit code.
+	 *
+	 * @param args the command line
+	 */
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * Runs the tool.
+	 *
+	 * @param args the command line
+	 * @param out where the results go
+	 * @param err where the summary of a jsonl or csv run
+	 * and any errors go
+	 * @return the exit code
+	 */
+	public static int run(String[] args, PrintStream out, PrintStream err) {
+		VerifyCli cli = new VerifyCli();
+		try {
+			try {
+				cli.parse(args);
+			} catch (IllegalArgumentException | IOException e) {
+				err.println(e.getMessage());
+				err.println(USAGE);
+				return 2;
+			}
+			return cli.verify(out, (cli.format == Format.TEXT) ? out : err);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			err.println("interrupted");
+			return 1;
+		} finally {
+			cli.close();
+		}
+	}
+	//----------------End Main-----------------------------------------------------------//
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * Reads the command line into sources and settings.
+	 * Sources are added in the order they are given. The
+	 * ones fetched from the site only make the fetcher 
+	 * when they are first called, so --base counts wherever
+	 * it is given.
+	 */
+	private void parse(String[] args) throws IOException {
+		boolean anySource = false;                           // true once a source option is given
+		for (int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+			anySource |= arg.equals("--range") || arg.equals("--hashes") || arg.equals("--url")
+			           || arg.equals("--dir") || arg.equals("--stdin");
+			switch (arg) {
+			case "--range": {
+				String range = value(args, ++i, arg);
+				int dots = range.indexOf("..");
+				if (dots < 0) {
+					throw new IllegalArgumentException("a range is FROM..TO: " + range);
+				}
+				int from = number(range.substring(0, dots), arg);
+				int to = number(range.substring(dots + 2), arg);
+				if (to < from) {
+					throw new IllegalArgumentException("the range ends before it starts: " + range);
+				}
+				for (int h = from; h <= to; ++h) {
+					addHeight(h);
+				}
+				break;
+			}
+			case "--hashes":
+				for (String hash : value(args, ++i, arg).split(",")) {
+					addHashOrHeight(hash.trim());
+				}
+				break;
+			case "--url":
+				addPage(new URL(value(args, ++i, arg)));
+				break;
+			case "--dir":
+				addDirectory(Paths.get(value(args, ++i, arg)));
+				break;
+			case "--stdin": {
+				BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (!line.trim().isEmpty()) {
+						addHashOrHeight(line.trim());
+					}
+				}
+				break;
+			}
+			case "--parallelism":
+				parallelism = number(value(args, ++i, arg), arg);
+				if (parallelism < 1) {
+					throw new IllegalArgumentException("--parallelism must be at least one");
+				}
+				break;
+			case "--format":
+				try {
+					format = Format.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("--format is text, jsonl or csv");
+				}
+				break;
+			case "--base":
+				base = URI.create(value(args, ++i, arg));
+				break;
+			default:
+				throw new IllegalArgumentException("unknown option: " + arg);
+			}
+		}
+		if (!anySource) {
+			sources.add(new Callable<Block>() {              // the most recent block, as verifyTester did
+				@Override
+				public Block call() throws Exception { return fetcher().fetchLatest(); }
+			});
+		}
+	}
+
+	/**
+	 * Adds a block hash, or a height if it is all digits.
+	 */
+	private void addHashOrHeight(final String s) {
+		if (isDigits(s)) {
+			addHeight(number(s, "height"));
+		} else if (MerkleTree.isTxid(s)) {
+			sources.add(new Callable<Block>() {
+				@Override
+				public Block call() throws Exception { return fetcher().fetch(s); }
+			});
+		} else {
+			throw new IllegalArgumentException("not a block hash or height: " + s);
+		}
+	}
+
+	/**
+	 * Adds the block at a height.
+	 */
+	private void addHeight(final int height) {
+		sources.add(new Callable<Block>() {
+			@Override
+			public Block call() throws Exception { return fetcher().fetchHeight(height); }
+		});
+	}
+
+	/**
+	 * Adds a block page, fetched when it is verified.
+	 */
+	private void addPage(final URL url) {
+		sources.add(new Callable<Block>() {
+			@Override
+			public Block call() throws Exception { return new Block(url); }
+		});
+	}
+
+	/**
+	 * Adds every saved block page and every block of every
+	 * blk*.dat file in a directory, in name order.
+	 */
+	private void addDirectory(Path dir) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "*.{html,htm,dat}")) {
+			for (Path file : entries) {
+				files.add(file);
+			}
+		}
+		files.sort(null);
+		for (Path file : files) {
+			if (file.toString().endsWith(".dat")) {
+				RawBlockFile blocks = new RawBlockFile(file);
+				open.add(blocks);
+				for (final RawBlock block : blocks) {
+					sources.add(new Callable<RawBlock>() {
+						@Override
+						public RawBlock call() { return block; }
+					});
+				}
+			} else {
+				addPage(file.toUri().toURL());
+			}
+		}
+	}
+
+	/**
+	 * Verifies every source and prints the results.
+	 *
+	 * @return the exit code
+	 */
+	private int verify(PrintStream out, PrintStream summary) throws InterruptedException {
+		DefaultMetricsRegistry metrics = new DefaultMetricsRegistry();   // counts this run only
+		MetricsRegistry previous = Metrics.registry();
+		Metrics.setRegistry(metrics);
+
+		final Histogram latency = new Histogram();                        // fetch plus hash time per block
+		final int[] tally = new int[VerificationResult.Status.values().length];
+		if (format == Format.CSV) {
+			out.println("sequence,block,hash,status,computed_root,expected_root,fetch_ms,hash_ms,detail");
+		}
+		long start = System.nanoTime();
+		try {
+			BatchVerify batch = new BatchVerify(parallelism, parallelism, 2 * parallelism);
+			batch.run(sources.iterator(), new BatchVerify.Sink() {
+				@Override
+				public void accept(BatchVerify.Result r) {
+					latency.record(r.getFetchNanos() + r.getHashNanos());
+					++tally[r.getStatus().ordinal()];
+					out.println(line(r));
+				}
+			});
+		} finally {
+			Metrics.setRegistry(previous);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long blocks = latency.getCount();
+		summary.printf(Locale.ROOT, "%d blocks in %.3f s: %.1f blocks/s, %.1f tx/s, latency p50 %.2f ms, p99 %.2f ms%n",
+		               blocks, seconds, blocks / seconds, metrics.getCount(Metrics.Counter.TRANSACTIONS) / seconds,
+		               latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6);
+		StringBuilder counts = new StringBuilder();
+		for (VerificationResult.Status status : VerificationResult.Status.values()) {
+			if (tally[status.ordinal()] > 0) {
+				counts.append(counts.length() == 0 ? "" : ", ").append(status).append(' ').append(tally[status.ordinal()]);
+			}
+		}
+		summary.println(counts);
+		return (tally[VerificationResult.Status.MATCH.ordinal()] == blocks) ? 0 : 1;
+	}
+
+	/**
+	 * @return the line printed for one block
+	 */
+	private String line(BatchVerify.Result r) {
+		VerificationResult v = r.getVerification();
+		double fetchMillis = r.getFetchNanos() / 1e6;
+		double hashMillis = r.getHashNanos() / 1e6;
+		switch (format) {
+		case JSONL:
+			return String.format(Locale.ROOT,
+					"{\"sequence\":%d,\"block\":%d,\"hash\":%s,\"status\":\"%s\",\"computedRoot\":%s,"
+					+ "\"expectedRoot\":%s,\"fetchMillis\":%.3f,\"hashMillis\":%.3f,\"detail\":%s}",
+					r.getSequence(), v.blockNumber(), json(v.blockHash()), v.status(), json(v.computedRoot()),
+					json(v.expectedRoot()), fetchMillis, hashMillis, json(v.detail()));
+		case CSV:
+			return String.format(Locale.ROOT, "%d,%d,%s,%s,%s,%s,%.3f,%.3f,%s",
+					r.getSequence(), v.blockNumber(), csv(v.blockHash()), v.status(), csv(v.computedRoot()),
+					csv(v.expectedRoot()), fetchMillis, hashMillis, csv(v.detail()));
+		default:
+			return String.format(Locale.ROOT, "Block #: %-8d %-15s %s%s",
+					v.blockNumber(), v.status(), (v.computedRoot() != null) ? v.computedRoot() : "",
+					(v.detail() != null) ? "  " + v.detail() : "");
+		}
+	}
+
+	private static String json(String s) {
+		if (s == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static String csv(String s) {
+		if (s == null) {
+			return "";
+		}
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+			return s;
+		}
+		return '"' + s.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * @return the fetcher, made on first use by whichever
+	 * fetch worker gets there first
+	 */
+	private synchronized BlockFetcher fetcher() {
+		if (fetcher == null) {
+			fetcher = new BlockFetcher(base, 2 * parallelism, Duration.ofSeconds(10), Duration.ofSeconds(30),
+			                           3, Duration.ofMillis(200));
+			open.add(fetcher);
+		}
+		return fetcher;
+	}
+
+	private static boolean isDigits(String s) {
+		if (s.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); ++i) {
+			if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String value(String[] args, int i, String option) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException(option + " needs a value");
+		}
+		return args[i];
+	}
+
+	private static int number(String s, String option) {
+		try {
+			return Integer.parseInt(s.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(option + " needs a number: " + s);
+		}
+	}
+
+	private synchronized void close() {
+		for (Closeable c : open) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// nothing more to do with it
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package MerkleTreeVerify;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * This class runs the benchmarks with the JMH gc profiler
+ * switched on, so every result comes with its allocation 
+ * rate (gc.alloc.rate.norm is bytes per operation). Any
+ * normal JMH command line options can be given.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
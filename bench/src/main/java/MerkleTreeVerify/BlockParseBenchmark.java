@@ -0,0 +1,80 @@
+package MerkleTreeVerify;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks getting the transaction IDs out
+ * of a block, either parsed from a block page the way
+ * Block.fetchTransactions does or hashed from a raw block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockParseBenchmark {
+
+	@Param({"1", "500", "3001"})
+	int transactions;
+
+	byte[] page;          // a generated block page
+	Path pageFile;        // the same page on disk
+	URL pageURL;          // the URL Block reads the page from
+	ByteBuffer raw;       // a raw block
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		page = Fixtures.blockPage(transactions);
+		pageFile = Files.createTempFile("block", ".html");
+		Files.write(pageFile, page);
+		pageURL = pageFile.toUri().toURL();
+		raw = ByteBuffer.wrap(Fixtures.rawBlock(transactions)).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(pageFile);
+	}
+
+	/** the parser alone on a page already in memory */
+	@Benchmark
+	public int parsePage() throws IOException {
+		BlockPageParser parser = new BlockPageParser();
+		parser.parse(new ByteArrayInputStream(page));
+		return parser.getTransactionCount();
+	}
+
+	/** everything Block does, reading the page through a file URL */
+	@Benchmark
+	public int fetchTransactions() throws IOException {
+		return new Block(pageURL).getTransactionCount();
+	}
+
+	/** computing the transaction IDs of a raw block */
+	@Benchmark
+	public byte[] rawBlockTxids() {
+		return new RawBlock(raw.duplicate().order(ByteOrder.LITTLE_ENDIAN)).getTransactionHashes();
+	}
+}
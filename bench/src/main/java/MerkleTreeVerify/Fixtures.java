@@ -0,0 +1,148 @@
+package MerkleTreeVerify;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+
+/**
+ * This class makes the data the benchmarks run on. The
+ * block pages are laid out like the https://blockchain.info
+ * pages Block reads and the raw blocks like the blocks in 
+ * a blk*.dat file, half of their transactions being segwit.
+ * A fixed seed keeps every run on the same data.
+ * 
+ * Two small fixtures are checked in as resources instead:
+ * the page of block 100000 and a blk00000.dat holding the
+ * genesis block. See bench/README.md for where they came 
+ * from.
+ */
+final class Fixtures {
+	private static final long SEED = 0x6d65726b6c65L;
+
+	private Fixtures() { }
+
+	/**
+	 * @return the bytes of a fixture checked in next to 
+	 * this class
+	 * @throws IOException if there is no such fixture
+	 */
+	static byte[] recorded(String name) throws IOException {
+		try (InputStream in = Fixtures.class.getResourceAsStream(name)) {
+			if (in == null) {
+				throw new IOException("no fixture " + name);
+			}
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * @return count random hex transaction IDs
+	 */
+	static String[] txids(int count) {
+		byte[] hashes = hashes(count);
+		String[] ids = new String[count];
+		for (int i = 0; i < count; ++i) {
+			ids[i] = MerkleTree.encodeTxid(hashes, i * MerkleTree.HASH_LEN);
+		}
+		return ids;
+	}
+
+	/**
+	 * @return count random hashes packed 32 bytes apiece
+	 */
+	static byte[] hashes(int count) {
+		byte[] hashes = new byte[count * MerkleTree.HASH_LEN];
+		new Random(SEED).nextBytes(hashes);
+		return hashes;
+	}
+
+	/**
+	 * @return a block page holding count transactions
+	 */
+	static byte[] blockPage(int count) {
+		String[] ids = txids(count);
+		StringBuilder page = new StringBuilder(count * 200);
+		page.append("<html><head><title>Bitcoin Block</title></head><body>\n");
+		page.append("<h1>Block #370000</h1>\n");
+		page.append("<table class=\"table table-striped\">\n");
+		page.append("<tr><td>Number Of Transactions</td>\n");
+		page.append("<td>").append(count).append("</td>\n");
+		page.append("<tr><td>Merkle Root</td>\n");
+		page.append("<td>").append(new MerkleTree(ids).getMerkleRoot()).append("</td>\n");
+		page.append("</table>\n");
+		for (String id : ids) {
+			page.append("<table class=\"table table-striped\"><tr><th colspan=\"3\" align=\"left\">");
+			page.append("<a class=\"hash-link\" href=\"/tx/").append(id).append("\">").append(id).append("</a>");
+			page.append("<span class=\"pull-right\">2015-08-13 02:11:54</span></th></tr></table>\n");
+		}
+		page.append("</body></html>\n");
+		return page.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return a serialized block holding count transactions,
+	 * its header's merkle root is left as zeros
+	 */
+	static byte[] rawBlock(int count) {
+		Random random = new Random(SEED);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(count * 250);
+		out.write(new byte[RawBlock.HEADER_LEN], 0, RawBlock.HEADER_LEN);
+		writeVarInt(out, count);
+		for (int i = 0; i < count; ++i) {
+			boolean segwit = (i % 2) == 1;
+			writeInt(out, 2);                       // version
+			if (segwit) {
+				out.write(0);                       // marker
+				out.write(1);                       // flag
+			}
+			out.write(1);                           // one input
+			writeRandom(out, random, 36);           // previous output
+			out.write(segwit ? 0 : 106);            // script
+			writeRandom(out, random, segwit ? 0 : 106);
+			writeInt(out, 0xffffffff);              // sequence
+			out.write(2);                           // two outputs
+			for (int j = 0; j < 2; ++j) {
+				writeRandom(out, random, 8);        // value
+				out.write(25);
+				writeRandom(out, random, 25);
+			}
+			if (segwit) {
+				out.write(2);                       // signature and key
+				out.write(72);
+				writeRandom(out, random, 72);
+				out.write(33);
+				writeRandom(out, random, 33);
+			}
+			writeInt(out, 0);                       // lock time
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int v) {
+		out.write(v);
+		out.write(v >>> 8);
+		out.write(v >>> 16);
+		out.write(v >>> 24);
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int v) {
+		if (v < 0xfd) {
+			out.write(v);
+		} else if (v <= 0xffff) {
+			out.write(0xfd);
+			out.write(v);
+			out.write(v >>> 8);
+		} else {
+			out.write(0xfe);
+			writeInt(out, v);
+		}
+	}
+
+	private static void writeRandom(ByteArrayOutputStream out, Random random, int len) {
+		byte[] bytes = new byte[len];
+		random.nextBytes(bytes);
+		out.write(bytes, 0, len);
+	}
+}
@@ -0,0 +1,49 @@
+package MerkleTreeVerify;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks hashing one 2048 pair level of
+ * a tree with each HashBackend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBackendBenchmark {
+	private static final int PAIRS = 2048;
+
+	@Param({"scalar", "multibuffer-4", "multibuffer"})
+	String backendName;
+
+	HashBackend backend;
+	byte[] level;         // the hashes of the level
+	byte[] next;          // where the next level goes
+
+	@Setup
+	public void setup() {
+		backend = HashBackends.byName(backendName);
+		level = Fixtures.hashes(2 * PAIRS);
+		next = new byte[PAIRS * MerkleTree.HASH_LEN];
+	}
+
+	@Benchmark
+	public byte[] hashLevel() {
+		backend.hashLevel(level, 0, PAIRS, next, 0);
+		return next;
+	}
+}
@@ -0,0 +1,64 @@
+package MerkleTreeVerify;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks the small steps a Merkle Root
+ * is made of: hashing one pair of nodes and converting a
+ * transaction ID between hex and bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+	byte[] pair;          // two leaves side by side
+	byte[] out;           // where a hash is written
+	String txid;          // a hex transaction ID
+
+	@Setup
+	public void setup() {
+		pair = Fixtures.hashes(2);
+		out = new byte[MerkleTree.HASH_LEN];
+		txid = Fixtures.txids(1)[0];
+	}
+
+	/** one level of two nodes, a single double sha256 */
+	@Benchmark
+	public byte[] hashEm() {
+		MerkleTree.hashEm(DoubleSha256.get(), pair, 2, out);
+		return out;
+	}
+
+	/** an odd node hashed with itself */
+	@Benchmark
+	public byte[] hashEmOdd() {
+		MerkleTree.hashEm(DoubleSha256.get(), pair, 1, out);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] decodeTxid() {
+		MerkleTree.decodeTxid(txid, out, 0);
+		return out;
+	}
+
+	@Benchmark
+	public String encodeTxid() {
+		return MerkleTree.encodeTxid(pair, 0);
+	}
+}
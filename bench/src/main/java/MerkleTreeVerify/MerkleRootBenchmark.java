@@ -0,0 +1,69 @@
+package MerkleTreeVerify;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks working out a Merkle Root for
+ * trees from one leaf up to a million, with odd and even
+ * leaf counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MerkleRootBenchmark {
+
+	@Param({"1", "2", "3", "255", "256", "3001", "4096", "65535", "1000000"})
+	int leaves;
+
+	String[] txids;       // the leaves as hex strings
+	byte[] hashes;        // the leaves already decoded
+	byte[] scratch;       // where the levels are written
+
+	@Setup
+	public void setup() {
+		txids = Fixtures.txids(leaves);
+		hashes = Fixtures.hashes(leaves);
+		scratch = new byte[((leaves + 1) / 2 + 1) * MerkleTree.HASH_LEN];
+	}
+
+	/** decoding the hex IDs and hashing, what BlockVerify did before the byte[] path */
+	@Benchmark
+	public String fromStrings() {
+		return new MerkleTree(txids).getMerkleRoot();
+	}
+
+	/** building a tree from decoded leaves */
+	@Benchmark
+	public String fromBytes() {
+		return new MerkleTree(hashes, leaves).getMerkleRoot();
+	}
+
+	/** just the hashing, nothing allocated */
+	@Benchmark
+	public byte[] computeRoot() {
+		MerkleTree.computeRoot(hashes, leaves, scratch);
+		return scratch;
+	}
+
+	/** hashing split across the common pool */
+	@Benchmark
+	public String parallel() {
+		return MerkleTree.parallel(hashes, leaves, ForkJoinPool.commonPool(), MerkleTree.DEFAULT_PARALLEL_CUTOFF).getMerkleRoot();
+	}
+}
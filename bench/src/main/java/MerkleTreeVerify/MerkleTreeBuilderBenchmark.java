@@ -0,0 +1,60 @@
+package MerkleTreeVerify;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks checking a stream of blocks with
+ * a new MerkleTree per block against one reused
+ * MerkleTreeBuilder. Run it with the gc profiler, as
+ * BenchmarkMain does, and gc.alloc.rate.norm shows the
+ * bytes allocated per block, which should be zero for
+ * builderMatches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MerkleTreeBuilderBenchmark {
+
+	@Param({"255", "3001", "65535"})
+	int leaves;
+
+	byte[] hashes;                  // the leaves already decoded
+	String root;                    // the hex root of the leaves
+	MerkleTreeBuilder builder;      // reused for every block
+
+	@Setup
+	public void setup() {
+		hashes = Fixtures.hashes(leaves);
+		root = new MerkleTree(hashes, leaves).getMerkleRoot();
+		builder = new MerkleTreeBuilder(1);         // grows on the first block only
+	}
+
+	/** a new tree per block, what BlockVerify does */
+	@Benchmark
+	public boolean newTree() {
+		return new MerkleTree(hashes, leaves).getMerkleRoot().equals(root);
+	}
+
+	/** one builder for every block, checked without a hex root */
+	@Benchmark
+	public boolean builderMatches() {
+		builder.reset();
+		builder.addAll(hashes, leaves);
+		return builder.matches(root);
+	}
+}
@@ -0,0 +1,84 @@
+package MerkleTreeVerify;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks the same paths as
+ * BlockParseBenchmark on the checked in fixtures: the
+ * page of block 100000 and a blk00000.dat holding the
+ * genesis block. They are small, so these numbers are
+ * mostly the fixed cost of a block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordedBlockBenchmark {
+
+	byte[] page;          // the page of block 100000
+	Path pageFile;        // the same page on disk
+	URL pageURL;          // the URL Block reads the page from
+	Path blkFile;         // the genesis blk00000.dat on disk
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		page = Fixtures.recorded("block100000.html");
+		pageFile = Files.createTempFile("block", ".html");
+		Files.write(pageFile, page);
+		pageURL = pageFile.toUri().toURL();
+		blkFile = Files.createTempFile("blk", ".dat");
+		Files.write(blkFile, Fixtures.recorded("blk00000.dat"));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(pageFile);
+		Files.deleteIfExists(blkFile);
+	}
+
+	/** the parser alone on the page already in memory */
+	@Benchmark
+	public int parsePage() throws IOException {
+		BlockPageParser parser = new BlockPageParser();
+		parser.parse(new ByteArrayInputStream(page));
+		return parser.getTransactionCount();
+	}
+
+	/** everything Block does, reading the page through a file URL */
+	@Benchmark
+	public int fetchTransactions() throws IOException {
+		return new Block(pageURL).getTransactionCount();
+	}
+
+	/** mapping the blk file and computing the transaction IDs of its block */
+	@Benchmark
+	public int blkFileTxids() throws IOException {
+		int hashes = 0;
+		try (RawBlockFile file = new RawBlockFile(blkFile)) {
+			for (RawBlock block : file) {
+				hashes += block.getTransactionHashes().length;
+			}
+		}
+		return hashes;
+	}
+}
@@ -0,0 +1,248 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Tests the retries, backoff and timeouts of BlockFetcher
+ * against a stub server on the loopback address. Each
+ * test decides what the server answers to each request
+ * by the number of requests it has had so far.
+ */
+public class BlockFetcherTest {
+	private static final String BLOCK_HASH = "000000000003ba27aa200b1cecaad478d2b00432346c3f1f3986da1afd33e506";
+	private static final String ROOT = "f3e94742aca4b5ef85488dc37c06c3282295ffec960994b2c0d5ac2a25a95766";
+	private static final String[] TXIDS = {
+		"8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87",
+		"fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4",
+		"6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4",
+		"e9a66845e05d5abc0ad04ec80f774a7e585c6e8db975962d069a522137b80c1d"
+	};
+	private static final long BACKOFF_MILLIS = 50;
+
+	private HttpServer server;
+	private ExecutorService serverThreads;
+	private URI base;
+	private final AtomicInteger requests = new AtomicInteger();
+	private volatile Responder responder;      // what the server answers
+
+	/**
+	 * Answers one request to the stub server.
+	 */
+	private interface Responder {
+		void respond(HttpExchange exchange, int request) throws IOException, InterruptedException;
+	}
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			try {
+				responder.respond(exchange, requests.incrementAndGet());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				exchange.close();
+			}
+		});
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+		base = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	@Test
+	public void retriesServiceUnavailableWithBackoff() throws Exception {
+		responder = (exchange, request) -> {
+			if (request <= 2) {
+				send(exchange, 503, "");
+			} else {
+				send(exchange, 200, page());
+			}
+		};
+		long start = System.nanoTime();
+		try (BlockFetcher fetcher = fetcher(3, Duration.ofSeconds(5))) {
+			Block block = fetcher.fetch(BLOCK_HASH);
+			assertTrue(new BlockVerify(block).verifyRoot());
+			assertEquals(4, block.getTransactionCount());
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		assertEquals(3, requests.get());
+		assertTrue(elapsedMillis >= 3 * BACKOFF_MILLIS, "two retries wait the backoff and then twice it: " + elapsedMillis + " ms");
+	}
+
+	@Test
+	public void givesUpAfterMaxRetries() throws Exception {
+		responder = (exchange, request) -> send(exchange, 503, "");
+		try (BlockFetcher fetcher = fetcher(2, Duration.ofSeconds(5))) {
+			IOException e = assertThrows(IOException.class, () -> fetcher.fetch(BLOCK_HASH));
+			assertTrue(e.getMessage().contains("503"), e.getMessage());
+		}
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	public void doesNotRetryNotFound() throws Exception {
+		responder = (exchange, request) -> send(exchange, 404, "");
+		try (BlockFetcher fetcher = fetcher(3, Duration.ofSeconds(5))) {
+			assertThrows(IOException.class, () -> fetcher.fetch(BLOCK_HASH));
+		}
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void retriesTimeouts() throws Exception {
+		responder = (exchange, request) -> {
+			if (request == 1) {
+				Thread.sleep(2000);                       // well past the request timeout
+			}
+			send(exchange, 200, page());
+		};
+		try (BlockFetcher fetcher = fetcher(1, Duration.ofMillis(300))) {
+			assertTrue(new BlockVerify(fetcher.fetch(BLOCK_HASH)).verifyRoot());
+		}
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void timesOut() throws Exception {
+		responder = (exchange, request) -> {
+			Thread.sleep(2000);
+			send(exchange, 200, page());
+		};
+		long start = System.nanoTime();
+		try (BlockFetcher fetcher = fetcher(1, Duration.ofMillis(300))) {
+			assertThrows(HttpTimeoutException.class, () -> fetcher.fetch(BLOCK_HASH));
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		assertEquals(2, requests.get());
+		assertTrue(elapsedMillis < 2000, "each request stops at its timeout: " + elapsedMillis + " ms");
+	}
+
+	@Test
+	public void fetchAllUsesNoMoreThreadsThanRequests() throws Exception {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger mostInFlight = new AtomicInteger();
+		responder = (exchange, request) -> {
+			mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			Thread.sleep(20);
+			inFlight.decrementAndGet();
+			send(exchange, 200, page());
+		};
+		List<String> hashes = new ArrayList<String>();
+		for (int i = 0; i < 60; ++i) {
+			hashes.add(BLOCK_HASH);
+		}
+		try (BlockFetcher fetcher = fetcher(0, Duration.ofSeconds(5))) {
+			List<Future<Block>> blocks = fetcher.fetchAll(hashes);
+			Thread.sleep(50);
+			assertTrue(fetchThreads() <= 4, fetchThreads() + " threads fetching for 4 requests in flight");
+			for (Future<Block> block : blocks) {
+				assertTrue(new BlockVerify(block.get()).verifyRoot());
+			}
+		}
+		assertEquals(60, requests.get());
+		assertTrue(mostInFlight.get() <= 4, mostInFlight.get() + " requests in flight");
+	}
+
+	@Test
+	public void followsTheBlockLinkOfAHeight() throws Exception {
+		responder = (exchange, request) -> {
+			if (exchange.getRequestURI().getPath().startsWith("/block-height/")) {
+				send(exchange, 200, "<a href=\"/block/" + BLOCK_HASH + "\">" + BLOCK_HASH + "</a>");
+			} else {
+				send(exchange, 200, page());
+			}
+		};
+		try (BlockFetcher fetcher = fetcher(0, Duration.ofSeconds(5))) {
+			assertEquals(100000, fetcher.fetchHeight(100000).getBlockNumber());
+		}
+	}
+
+	@Test
+	public void refusesABlockLinkThatNeverEnds() throws Exception {
+		responder = (exchange, request) -> send(exchange, 200, "<a href=\"/block/" + BLOCK_HASH);
+		try (BlockFetcher fetcher = fetcher(0, Duration.ofSeconds(5))) {
+			IOException e = assertThrows(IOException.class, () -> fetcher.fetchHeight(100000));
+			assertTrue(e.getMessage().contains("never ends"), e.getMessage());
+		}
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	private BlockFetcher fetcher(int maxRetries, Duration requestTimeout) {
+		return new BlockFetcher(base, 4, Duration.ofSeconds(2), requestTimeout, maxRetries,
+		                        Duration.ofMillis(BACKOFF_MILLIS));
+	}
+
+	/**
+	 * @return the number of platform threads running a
+	 * fetch, whether sending or waiting for a permit
+	 */
+	private static int fetchThreads() {
+		int threads = 0;
+		for (StackTraceElement[] stack : Thread.getAllStackTraces().values()) {
+			for (StackTraceElement frame : stack) {
+				if (frame.getClassName().equals(BlockFetcher.class.getName()) && frame.getMethodName().equals("get")) {
+					++threads;
+					break;
+				}
+			}
+		}
+		return threads;
+	}
+
+	/**
+	 * @return the page of block 100000
+	 */
+	private static String page() {
+		StringBuilder page = new StringBuilder("<html><body>\n<h1>Block #100000</h1>\n<table>\n")
+				.append("<tr><th>Number Of Transactions</th>\n<td id=\"n_tx\">").append(TXIDS.length).append("</td>\n")
+				.append("<tr><th>Merkle Root</th>\n<td>").append(ROOT).append("</td>\n</table>\n");
+		for (String txid : TXIDS) {
+			page.append("<tr><td><a class=\"hash-link\" href=\"/tx/").append(txid).append("\">")
+			    .append(txid).append("</a></td>\n");
+		}
+		return page.append("</body></html>\n").toString();
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, (bytes.length == 0) ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests HeaderChainVerifier on the genesis header and on
+ * chains mined here against the regtest limit, which half
+ * of all hashes meet.
+ */
+public class HeaderChainVerifierTest {
+	private static final int HEADER_LEN = HeaderChainVerifier.HEADER_LEN;
+	private static final int REGTEST_LIMIT = 0x207fffff;
+	private static final int CHAIN_LEN = 300;                        // more than one task hashes
+
+	@Test
+	public void acceptsTheGenesisHeader() {
+		HeaderChainVerifier verifier = new HeaderChainVerifier();
+		assertEquals(1, verifier.add(genesisHeader(), 0, 1));
+		assertNull(verifier.getProblem());
+		assertEquals(0, verifier.getHeight());
+		assertEquals(RawBlockFileTest.GENESIS_HASH, verifier.getTipHash());
+
+		RawBlock genesis = new RawBlock(ByteBuffer.wrap(RawBlockFileTest.genesis()).order(ByteOrder.LITTLE_ENDIAN));
+		assertEquals(VerificationResult.Status.MATCH, verifier.verifyBlock(genesis, 0).status());
+		assertEquals(VerificationResult.Status.MATCH, verifier.verifyBlock(genesis).status());   // no BIP 34 height, found by its hash
+		assertEquals(VerificationResult.Status.NOT_IN_CHAIN, verifier.verifyBlock(genesis, 1).status());
+	}
+
+	@Test
+	public void refusesABrokenLink() {
+		HeaderChainVerifier verifier = new HeaderChainVerifier();
+		byte[] twice = new byte[2 * HEADER_LEN];
+		System.arraycopy(genesisHeader(), 0, twice, 0, HEADER_LEN);
+		System.arraycopy(genesisHeader(), 0, twice, HEADER_LEN, HEADER_LEN);
+		assertEquals(1, verifier.add(twice, 0, 2));                  // the second header does not follow the first
+		assertEquals(HeaderChainVerifier.Failure.BROKEN_LINK, verifier.getProblem().getFailure());
+		assertEquals(1, verifier.getProblem().getHeight());
+		assertEquals(0, verifier.add(genesisHeader(), 0, 1));        // nothing more is taken after a problem
+	}
+
+	@Test
+	public void refusesBadProofOfWork() {
+		byte[] header = genesisHeader();
+		header[HEADER_LEN - 1] ^= 1;                                 // the nonce
+		HeaderChainVerifier verifier = new HeaderChainVerifier();
+		assertEquals(0, verifier.add(header, 0, 1));
+		assertEquals(HeaderChainVerifier.Failure.BAD_PROOF_OF_WORK, verifier.getProblem().getFailure());
+		assertEquals(0, verifier.getProblem().getHeight());
+	}
+
+	@Test
+	public void refusesATargetEasierThanTheLimit() {
+		byte[] header = genesisHeader();
+		ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).putInt(72, REGTEST_LIMIT);
+		HeaderChainVerifier verifier = new HeaderChainVerifier();
+		assertEquals(0, verifier.add(header, 0, 1));
+		assertEquals(HeaderChainVerifier.Failure.BAD_TARGET, verifier.getProblem().getFailure());
+	}
+
+	@Test
+	public void followsAMinedChain() throws IOException {
+		byte[] chain = mine(CHAIN_LEN);
+		HeaderChainVerifier verifier = regtest();
+		assertEquals(CHAIN_LEN, verifier.verify(new ByteArrayInputStream(chain)));
+		assertNull(verifier.getProblem());
+		assertEquals(CHAIN_LEN - 1, verifier.getHeight());
+
+		byte[] broken = chain.clone();
+		broken[200 * HEADER_LEN + 4] ^= 1;                           // the previous block hash of header 200
+		verifier = regtest();
+		assertEquals(200, verifier.verify(new ByteArrayInputStream(broken)));
+		assertEquals(HeaderChainVerifier.Failure.BROKEN_LINK, verifier.getProblem().getFailure());
+		assertEquals(200, verifier.getProblem().getHeight());
+	}
+
+	@Test
+	public void refusesAStreamEndingPartWayThroughAHeader() {
+		byte[] chain = Arrays.copyOf(mine(5), 5 * HEADER_LEN - 7);
+		HeaderChainVerifier verifier = regtest();
+		assertThrows(IOException.class, () -> verifier.verify(new ByteArrayInputStream(chain)));
+		assertEquals(4, verifier.getHeaderCount());
+	}
+
+	@Test
+	public void expandsTargets() {
+		assertArrayEquals(target(26, 0xff, 27, 0xff), expand(HeaderChainVerifier.MAIN_POW_LIMIT));
+		assertArrayEquals(target(0, 0x56, 1, 0x34, 2, 0x12), expand(0x03123456));
+		assertArrayEquals(target(0, 0x34, 1, 0x12), expand(0x02123456));    // exponents under 3 shift the mantissa right
+		assertArrayEquals(target(0, 0x12), expand(0x01120000));
+		assertArrayEquals(target(30, 0xff, 31, 0xff), expand(0x2100ffff));  // zero bytes past 256 bits are fine
+		assertArrayEquals(target(31, 0x01), expand(0x22000001));
+
+		byte[] dst = new byte[40];
+		Arrays.fill(dst, (byte) 0x77);
+		assertTrue(HeaderChainVerifier.expandTarget(0x03123456, dst, 4));
+		assertEquals(0x77, dst[3]);
+		assertEquals(0x56, dst[4]);
+		assertEquals(0, dst[35]);                                    // the rest of the target is cleared
+		assertEquals(0x77, dst[36]);
+	}
+
+	@Test
+	public void refusesBadTargets() {
+		byte[] dst = new byte[MerkleTree.HASH_LEN];
+		assertFalse(HeaderChainVerifier.expandTarget(0x1d000000, dst, 0));   // zero
+		assertFalse(HeaderChainVerifier.expandTarget(0x1d800001, dst, 0));   // the sign bit is set
+		assertFalse(HeaderChainVerifier.expandTarget(0x01003456, dst, 0));   // shifted down to zero
+		assertFalse(HeaderChainVerifier.expandTarget(0x21010000, dst, 0));   // overflows 256 bits
+		assertFalse(HeaderChainVerifier.expandTarget(0x22000100, dst, 0));
+		assertThrows(IllegalArgumentException.class,
+		             () -> new HeaderChainVerifier(null, 0, 0, ForkJoinPool.commonPool()));
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	private static byte[] genesisHeader() {
+		return Arrays.copyOf(RawBlockFileTest.genesis(), HEADER_LEN);
+	}
+
+	private static HeaderChainVerifier regtest() {
+		return new HeaderChainVerifier(null, 0, REGTEST_LIMIT, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @return n headers, each linked to the one before it
+	 * and meeting the regtest limit
+	 */
+	private static byte[] mine(int n) {
+		byte[] headers = new byte[n * HEADER_LEN];
+		ByteBuffer buf = ByteBuffer.wrap(headers).order(ByteOrder.LITTLE_ENDIAN);
+		DoubleSha256 sha = DoubleSha256.get();
+		byte[] prev = new byte[MerkleTree.HASH_LEN];
+		byte[] hash = new byte[MerkleTree.HASH_LEN];
+		byte[] limit = expand(REGTEST_LIMIT);
+		for (int i = 0; i < n; ++i) {
+			int header = i * HEADER_LEN;
+			buf.putInt(header, 1);                                   // version
+			System.arraycopy(prev, 0, headers, header + 4, MerkleTree.HASH_LEN);
+			headers[header + 36] = (byte) i;                         // merkle root
+			buf.putInt(header + 68, i);                              // time
+			buf.putInt(header + 72, REGTEST_LIMIT);
+			for (int nonce = 0; ; ++nonce) {
+				buf.putInt(header + 76, nonce);
+				sha.hash(headers, header, HEADER_LEN, hash, 0);
+				if ((hash[31] & 0xff) < (limit[31] & 0xff)) {
+					break;
+				}
+			}
+			System.arraycopy(hash, 0, prev, 0, MerkleTree.HASH_LEN);
+		}
+		return headers;
+	}
+
+	private static byte[] expand(int bits) {
+		byte[] dst = new byte[MerkleTree.HASH_LEN];
+		assertTrue(HeaderChainVerifier.expandTarget(bits, dst, 0), Integer.toHexString(bits));
+		return dst;
+	}
+
+	/**
+	 * @return a LITTLE-ENDIAN target with the given bytes
+	 * set, given as index, value pairs
+	 */
+	private static byte[] target(int... pairs) {
+		byte[] target = new byte[MerkleTree.HASH_LEN];
+		for (int i = 0; i < pairs.length; i += 2) {
+			target[pairs[i]] = (byte) pairs[i + 1];
+		}
+		return target;
+	}
+}
@@ -0,0 +1,120 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests that MerkleDiff finds each kind of difference
+ * between two trees of the same block, comparing only
+ * along the paths down to the leaves that disagree.
+ */
+public class MerkleDiffTest {
+	private static final int SIZE = 100;
+	private static final int DEPTH = 7;                              // the levels above the leaves of a tree of SIZE
+
+	@Test
+	public void sameTreesHaveNoDifferences() {
+		MerkleDiff diff = MerkleDiff.compare(new MerkleTree(txids(SIZE)), new MerkleTree(txids(SIZE)));
+		assertTrue(diff.isEmpty());
+		assertEquals(1, diff.getComparisons());                      // the roots are the same
+	}
+
+	@Test
+	public void findsAWrongLeaf() {
+		String[] actual = txids(SIZE);
+		actual[37] = txid(SIZE + 1);
+		MerkleDiff diff = MerkleDiff.compare(new MerkleTree(actual), new MerkleTree(txids(SIZE)));
+		assertEquals(1, diff.getDifferences().size());
+		MerkleDiff.Difference d = diff.getDifferences().get(0);
+		assertEquals(37, d.getIndex());
+		assertEquals(MerkleDiff.Kind.WRONG, d.getKind());
+		assertEquals(-1, d.getOtherIndex());
+		assertTrue(diff.getComparisons() <= 2 * DEPTH + 1, diff.getComparisons() + " comparisons");
+	}
+
+	@Test
+	public void findsReorderedLeaves() {
+		String[] actual = txids(SIZE);
+		actual[10] = txid(70);
+		actual[70] = txid(10);
+		List<MerkleDiff.Difference> found = MerkleDiff.compare(new MerkleTree(actual), new MerkleTree(txids(SIZE)))
+				.getDifferences();
+		assertEquals(2, found.size());
+		assertEquals(MerkleDiff.Kind.REORDERED, found.get(0).getKind());
+		assertEquals(10, found.get(0).getIndex());
+		assertEquals(70, found.get(0).getOtherIndex());
+		assertEquals(MerkleDiff.Kind.REORDERED, found.get(1).getKind());
+		assertEquals(70, found.get(1).getIndex());
+		assertEquals(10, found.get(1).getOtherIndex());
+	}
+
+	@Test
+	public void findsMissingAndExtraLeaves() {
+		MerkleTree whole = new MerkleTree(txids(SIZE));
+		MerkleTree cut = new MerkleTree(Arrays.copyOf(txids(SIZE), SIZE - 3));
+		MerkleDiff missing = MerkleDiff.compare(cut, whole);
+		assertArrayEquals(new int[] {97, 98, 99}, missing.getIndices(MerkleDiff.Kind.MISSING));
+		assertEquals(3, missing.getDifferences().size());
+
+		MerkleDiff extra = MerkleDiff.compare(whole, cut);
+		assertArrayEquals(new int[] {97, 98, 99}, extra.getIndices(MerkleDiff.Kind.EXTRA));
+		assertEquals(3, extra.getDifferences().size());
+	}
+
+	@Test
+	public void findsAShiftedLeafAsReorderedNotMissing() {
+		String[] expected = txids(SIZE);
+		String[] actual = Arrays.copyOf(expected, SIZE - 1);
+		actual[SIZE - 2] = expected[SIZE - 1];                      // the second to last transaction was left out
+		MerkleDiff diff = MerkleDiff.compare(new MerkleTree(actual), new MerkleTree(expected));
+		assertEquals(1, diff.getDifferences().size());
+		MerkleDiff.Difference d = diff.getDifferences().get(0);
+		assertEquals(MerkleDiff.Kind.REORDERED, d.getKind());
+		assertEquals(SIZE - 2, d.getIndex());
+		assertEquals(SIZE - 1, d.getOtherIndex());
+		assertArrayEquals(new int[0], diff.getIndices(MerkleDiff.Kind.MISSING));   // the last leaf was found, one place down
+	}
+
+	@Test
+	public void comparesWithLevelsAndAStore() throws IOException {
+		MerkleTree expected = new MerkleTree(txids(SIZE));
+		String[] actual = txids(SIZE);
+		actual[5] = txid(SIZE + 1);
+		MerkleTree tree = new MerkleTree(actual);
+		assertArrayEquals(new int[] {5}, MerkleDiff.compare(tree, expected.getLevels(), SIZE).getIndices(MerkleDiff.Kind.WRONG));
+
+		Path file = Files.createTempFile("levels", ".bin");
+		try {
+			MerkleLevelStore.write(expected, file);
+			try (MerkleLevelStore store = MerkleLevelStore.open(file)) {
+				assertArrayEquals(new int[] {5}, MerkleDiff.compare(tree, store).getIndices(MerkleDiff.Kind.WRONG));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	private static String[] txids(int n) {
+		String[] txids = new String[n];
+		for (int i = 0; i < n; ++i) {
+			txids[i] = txid(i);
+		}
+		return txids;
+	}
+
+	private static String txid(int i) {
+		return String.format("%064x", 0x1000 + i);
+	}
+}
@@ -0,0 +1,107 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests that a MerkleLevelStore gives back the root and
+ * the proofs of the tree written to it, and refuses files
+ * that are not a level store.
+ */
+public class MerkleLevelStoreTest {
+	private static final int[] SIZES = {1, 2, 3, 7, 64, 101};    // odd and even widths
+
+	private Path file;
+
+	@BeforeEach
+	public void createFile() throws IOException {
+		file = Files.createTempFile("levels", ".bin");
+	}
+
+	@AfterEach
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void servesTheProofsOfTheTree() throws IOException {
+		for (int n : SIZES) {
+			String[] txids = txids(n, 0);
+			MerkleTree tree = new MerkleTree(txids);
+			MerkleLevelStore.write(tree, file);
+			try (MerkleLevelStore store = MerkleLevelStore.open(file)) {
+				assertEquals(n, store.size());
+				assertEquals(tree.getLevels().length, store.levels());
+				assertEquals(tree.getMerkleRoot(), store.getMerkleRoot(), n + " leaves");
+				for (int i = 0; i < n; ++i) {
+					MerkleProof proof = store.getProof(i);
+					assertEquals(tree.getProof(i), proof);
+					assertTrue(MerkleProof.verifyProof(txids[i], proof, tree.getMerkleRoot()));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void refusesIndicesPastTheTree() throws IOException {
+		MerkleLevelStore.write(new MerkleTree(txids(7, 0)), file);
+		try (MerkleLevelStore store = MerkleLevelStore.open(file)) {
+			assertThrows(IndexOutOfBoundsException.class, () -> store.getProof(7));
+			assertThrows(IndexOutOfBoundsException.class, () -> store.getProof(-1));
+			assertThrows(IndexOutOfBoundsException.class, () -> store.getHash(1, 4, new byte[MerkleTree.HASH_LEN], 0));
+		}
+	}
+
+	@Test
+	public void rewritingReplacesTheTree() throws IOException {
+		MerkleLevelStore.write(new MerkleTree(txids(64, 0)), file);
+		MerkleTree replacement = new MerkleTree(txids(3, 1000));
+		MerkleLevelStore.write(replacement, file);                   // shorter, so the old tail must be cut off
+		assertEquals(16 + 3 * 8 + (3 + 2 + 1) * MerkleTree.HASH_LEN, Files.size(file));      // header, offsets and levels
+		try (MerkleLevelStore store = MerkleLevelStore.open(file)) {
+			assertEquals(3, store.size());
+			assertEquals(replacement.getMerkleRoot(), store.getMerkleRoot());
+			assertFalse(MerkleProof.verifyProof(txids(64, 0)[1], store.getProof(1), store.getMerkleRoot()));
+		}
+	}
+
+	@Test
+	public void refusesFilesThatAreNotAStore() throws IOException {
+		Files.write(file, new byte[40]);
+		assertThrows(IOException.class, () -> MerkleLevelStore.open(file));
+
+		MerkleLevelStore.write(new MerkleTree(txids(7, 0)), file);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));   // the root is cut short
+		assertThrows(IOException.class, () -> MerkleLevelStore.open(file));
+
+		byte[] badLevels = bytes.clone();
+		badLevels[15] = 9;                                           // 7 leaves make 4 levels
+		Files.write(file, badLevels);
+		assertThrows(IOException.class, () -> MerkleLevelStore.open(file));
+
+		assertThrows(IllegalArgumentException.class, () -> MerkleLevelStore.write(new MerkleTree(new String[0]), file));
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	private static String[] txids(int n, int first) {
+		String[] txids = new String[n];
+		for (int i = 0; i < n; ++i) {
+			txids[i] = String.format("%064x", 0x1000 + first + i);
+		}
+		return txids;
+	}
+}
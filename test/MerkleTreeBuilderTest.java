@@ -0,0 +1,90 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests that MerkleTreeBuilder gives the same roots as
+ * MerkleTree and that checking block after block with it
+ * allocates nothing once it is warmed up.
+ */
+public class MerkleTreeBuilderTest {
+	private static final int HASH_LEN = MerkleTree.HASH_LEN;
+	private static final int[] SIZES = {1, 2, 3, 7, 64, 1001, 3000};   // odd and even widths, a block bigger than the default
+
+	@Test
+	public void matchesMerkleTree() {
+		Random random = new Random(1);
+		MerkleTreeBuilder builder = new MerkleTreeBuilder(1);
+		for (int n : SIZES) {
+			byte[] leaves = leaves(random, n);
+			String root = new MerkleTree(leaves, n).getMerkleRoot();
+			builder.reset();
+			builder.addAll(leaves, n);
+			assertEquals(root, builder.getMerkleRoot(), n + " leaves");
+			assertTrue(builder.matches(root));
+			assertFalse(builder.matches(root.replace(root.charAt(0), (root.charAt(0) == '0') ? '1' : '0')));
+		}
+	}
+
+	@Test
+	public void warmLoopAllocatesNothing() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "no thread allocation counter");
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported(), "no thread allocation counter");
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Random random = new Random(2);
+		byte[][] blocks = new byte[SIZES.length][];
+		String[] roots = new String[SIZES.length];
+		for (int i = 0; i < SIZES.length; ++i) {
+			blocks[i] = leaves(random, SIZES[i]);
+			roots[i] = new MerkleTree(blocks[i], SIZES[i]).getMerkleRoot();
+		}
+		MerkleTreeBuilder builder = new MerkleTreeBuilder(1);
+		int matched = check(builder, blocks, roots, 500);           // grows the arrays and lets the JIT settle
+
+		long before = threads.getCurrentThreadAllocatedBytes();
+		matched += check(builder, blocks, roots, 100);
+		long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+		assertEquals(600 * SIZES.length, matched);
+		assertEquals(0, allocated, "bytes allocated by 100 warm passes");
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * Checks every block passes times over.
+	 *
+	 * @return the number of blocks that matched
+	 */
+	private static int check(MerkleTreeBuilder builder, byte[][] blocks, String[] roots, int passes) {
+		int matched = 0;
+		for (int pass = 0; pass < passes; ++pass) {
+			for (int i = 0; i < blocks.length; ++i) {
+				builder.reset();
+				builder.addAll(blocks[i], SIZES[i]);
+				if (builder.matches(roots[i])) {
+					++matched;
+				}
+			}
+		}
+		return matched;
+	}
+
+	private static byte[] leaves(Random random, int n) {
+		byte[] leaves = new byte[n * HASH_LEN];
+		random.nextBytes(leaves);
+		return leaves;
+	}
+}
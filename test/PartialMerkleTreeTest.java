@@ -0,0 +1,96 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests building, reading and checking partial merkle
+ * trees on the transactions of block 100000, and that a
+ * proof built on a duplicated last subtree is refused.
+ */
+public class PartialMerkleTreeTest {
+	private static final String ROOT = "f3e94742aca4b5ef85488dc37c06c3282295ffec960994b2c0d5ac2a25a95766";
+	private static final String[] TXIDS = {
+		"8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87",
+		"fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4",
+		"6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4",
+		"e9a66845e05d5abc0ad04ec80f774a7e585c6e8db975962d069a522137b80c1d"
+	};
+
+	@Test
+	public void provesTransactionsOfABlock() {
+		PartialMerkleTree proof = PartialMerkleTree.build(new MerkleTree(TXIDS), 3, 1);
+		List<Integer> indices = new ArrayList<Integer>();
+		List<String> txids = new ArrayList<String>();
+		assertEquals(ROOT, proof.extractMatches(indices, txids));
+		assertEquals(Arrays.asList(1, 3), indices);                  // in leaf order, not the order asked for
+		assertEquals(Arrays.asList(TXIDS[1], TXIDS[3]), txids);
+		assertTrue(proof.verify(ROOT));
+		assertTrue(proof.verify(ROOT.toUpperCase()));
+		assertFalse(proof.verify("00" + ROOT.substring(2)));
+	}
+
+	@Test
+	public void survivesTheWireFormat() {
+		MerkleTree tree = new MerkleTree(TXIDS);
+		PartialMerkleTree proof = PartialMerkleTree.build(tree, 0, 2);
+		byte[] bytes = proof.serialize();
+		PartialMerkleTree read = PartialMerkleTree.parse(bytes);
+		assertEquals(4, read.getTransactionCount());
+		assertEquals(proof.getHashCount(), read.getHashCount());
+		assertArrayEquals(bytes, read.serialize());
+		assertTrue(read.verify(ROOT));
+	}
+
+	@Test
+	public void refusesADuplicatedLastSubtree() {
+		String[] three = Arrays.copyOf(TXIDS, 3);
+		String[] four = {TXIDS[0], TXIDS[1], TXIDS[2], TXIDS[2]};
+		String root = new MerkleTree(three).getMerkleRoot();
+		MerkleTree forged = new MerkleTree(four);
+		assertEquals(root, forged.getMerkleRoot());                  // CVE-2012-2459, both trees have the same root
+
+		assertTrue(PartialMerkleTree.build(new MerkleTree(three), 2).verify(root));
+		PartialMerkleTree proof = PartialMerkleTree.build(forged, 3);
+		assertNull(proof.extractMatches(null, null));
+		assertFalse(proof.verify(root));
+	}
+
+	@Test
+	public void refusesCutShortOrLeftOverBytes() {
+		byte[] bytes = PartialMerkleTree.build(new MerkleTree(TXIDS), 1).serialize();
+		assertThrows(IllegalArgumentException.class, () -> PartialMerkleTree.parse(Arrays.copyOf(bytes, bytes.length - 1)));
+		assertThrows(IllegalArgumentException.class, () -> PartialMerkleTree.parse(Arrays.copyOf(bytes, bytes.length + 1)));
+		assertThrows(IllegalArgumentException.class, () -> PartialMerkleTree.parse(Arrays.copyOf(bytes, 3)));
+
+		byte[] tooManyHashes = bytes.clone();
+		tooManyHashes[4] = (byte) 0x7f;                              // more hashes than there are bytes
+		assertThrows(IllegalArgumentException.class, () -> PartialMerkleTree.parse(tooManyHashes));
+	}
+
+	@Test
+	public void refusesAProofThatLeavesHashesOver() {
+		PartialMerkleTree proof = PartialMerkleTree.build(new MerkleTree(TXIDS), 1);
+		byte[] bytes = proof.serialize();
+		byte[] noFlags = bytes.clone();
+		noFlags[bytes.length - 1] = 0;                               // the root is not a parent of a match, so it is the only hash used
+		assertNull(PartialMerkleTree.parse(noFlags).extractMatches(null, null));
+	}
+
+	@Test
+	public void refusesIndicesOutsideTheTree() {
+		MerkleTree tree = new MerkleTree(TXIDS);
+		assertThrows(IndexOutOfBoundsException.class, () -> PartialMerkleTree.build(tree, 4));
+		assertThrows(IndexOutOfBoundsException.class, () -> PartialMerkleTree.build(tree, -1));
+	}
+}
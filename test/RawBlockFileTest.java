@@ -0,0 +1,134 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests reading blocks out of blk*.dat files, starting
+ * from the genesis block.
+ */
+public class RawBlockFileTest {
+	static final String GENESIS_HEX =
+			"0100000000000000000000000000000000000000000000000000000000000000000000003ba3edfd7a7b12b27ac72c3e6776"
+			+ "8f617fc81bc3888a51323a9fb8aa4b1e5e4a29ab5f49ffff001d1dac2b7c0101000000010000000000000000000000000000"
+			+ "000000000000000000000000000000000000ffffffff4d04ffff001d0104455468652054696d65732030332f4a616e2f3230"
+			+ "3039204368616e63656c6c6f72206f6e206272696e6b206f66207365636f6e64206261696c6f757420666f722062616e6b73"
+			+ "ffffffff0100f2052a01000000434104678afdb0fe5548271967f1a67130b7105cd6a828e03909a67962e0ea1f61deb649f6"
+			+ "bc3f4cef38c4f35504e51ec112de5c384df7ba0b8d578a4c702b6bf11d5fac00000000";
+	static final String GENESIS_HASH = "000000000019d6689c085ae165831e934ff763ae46a2a6c172b3f1b60a8ce26f";
+	static final String GENESIS_ROOT = "4a5e1e4baab89f3a32518a88c31bc87f618f76673e2cc77ab2127b7afdeda33b";
+	private static final int MAGIC = 0xd9b4bef9;    // the main network magic, f9beb4d9 on disk
+
+	@Test
+	public void readsTheGenesisBlock() throws IOException {
+		RawBlock genesis = new RawBlock(ByteBuffer.wrap(genesis()).order(ByteOrder.LITTLE_ENDIAN));
+		assertEquals(GENESIS_HASH, genesis.getBlockHash());
+		assertEquals(GENESIS_ROOT, genesis.getMerkleRoot());
+		assertEquals(1, genesis.getTransactionCount());
+		assertEquals(-1, genesis.getBlockNumber());                  // version 1, from before BIP 34
+		assertEquals(VerificationResult.Status.MATCH, BlockVerify.verify(genesis).status());
+	}
+
+	@Test
+	public void refusesABlockTooShortForItsHeader() {
+		assertThrows(IllegalArgumentException.class,
+		             () -> new RawBlock(ByteBuffer.wrap(new byte[40]).order(ByteOrder.LITTLE_ENDIAN)));
+	}
+
+	@Test
+	public void truncatedTransactionIsMalformed() {
+		byte[] cut = Arrays.copyOf(genesis(), 200);                  // the coinbase is cut off part way
+		RawBlock block = new RawBlock(ByteBuffer.wrap(cut).order(ByteOrder.LITTLE_ENDIAN));
+		assertEquals(VerificationResult.Status.MALFORMED_INPUT, BlockVerify.verify(block).status());
+	}
+
+	@Test
+	public void iteratesRecordsAndStopsAtTheZeroTail() throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		record(file, genesis());
+		record(file, genesis());
+		file.write(new byte[64]);                                    // the zero filled tail
+		assertEquals(2, count(file.toByteArray()));
+	}
+
+	@Test
+	public void leavesOutABlockCutOffAtTheEnd() throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		record(file, genesis());
+		record(file, genesis());
+		byte[] bytes = file.toByteArray();
+		assertEquals(1, count(Arrays.copyOf(bytes, bytes.length - 10)));
+	}
+
+	@Test
+	public void stopsAtARecordTooShortForABlock() throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		record(file, genesis());
+		record(file, Arrays.copyOf(genesis(), 40));                  // not even a whole header
+		record(file, genesis());
+		assertEquals(1, count(file.toByteArray()));
+
+		file.reset();
+		byte[] badCount = genesis();
+		badCount[RawBlock.HEADER_LEN] = (byte) 0xff;                 // claims more transactions than it has bytes
+		record(file, badCount);
+		assertEquals(0, count(file.toByteArray()));
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	static byte[] genesis() {
+		return hex(GENESIS_HEX);
+	}
+
+	static byte[] hex(String s) {
+		byte[] bytes = new byte[s.length() / 2];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+	private static void record(ByteArrayOutputStream file, byte[] block) {
+		ByteBuffer prefix = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).putInt(block.length);
+		file.write(prefix.array(), 0, 8);
+		file.write(block, 0, block.length);
+	}
+
+	/**
+	 * @return the number of blocks read from a file of
+	 * bytes, checking each one hashes to its root
+	 */
+	private static int count(byte[] bytes) throws IOException {
+		Path path = Files.createTempFile("blk", ".dat");
+		try {
+			Files.write(path, bytes);
+			int blocks = 0;
+			try (RawBlockFile file = new RawBlockFile(path)) {
+				Iterator<RawBlock> it = file.iterator();
+				while (it.hasNext()) {
+					assertTrue(BlockVerify.verify(it.next()).isMatch());
+					++blocks;
+				}
+				assertFalse(it.hasNext());
+			}
+			return blocks;
+		} finally {
+			Files.delete(path);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests transaction IDs, witness transaction IDs and the
+ * witness commitment, using the coinbase of the genesis
+ * block and a segwit copy of it spending with one 32 byte
+ * witness item.
+ */
+public class TransactionHasherTest {
+	private static final String COINBASE_TXID = RawBlockFileTest.GENESIS_ROOT;   // the genesis block has only its coinbase
+	private static final String SEGWIT_WTXID = "07e82d7dea159429c792524f5fa62c4b3feacb35941c954d72b5d87b736eedb0";
+	private static final String WITNESS_ROOT = "3825ef43921fba98341934d462894bd30b5cddd05a0288e066d83b9c241a699f";
+	private static final String COMMITMENT = "e2a80c5e3d55ed8fa96a6a81ecd5a8b5b9369ca07c376a9ac7ad67c31fdf87b9";   // as it appears in the coinbase output
+
+	@Test
+	public void segwitTxidLeavesOutTheWitness() {
+		TransactionHasher hasher = new TransactionHasher(true);
+		hasher.hash(new byte[][] {coinbase(), segwit()});
+		assertEquals(2, hasher.getCount());
+		assertEquals(COINBASE_TXID, MerkleTree.encodeTxid(hasher.getTxids(), MerkleTree.HASH_LEN));
+		assertEquals(SEGWIT_WTXID, MerkleTree.encodeTxid(hasher.getWtxids(), MerkleTree.HASH_LEN));
+	}
+
+	@Test
+	public void legacyWtxidIsItsTxid() {
+		TransactionHasher hasher = new TransactionHasher(true);
+		hasher.hash(new byte[][] {coinbase(), coinbase()});
+		assertEquals(COINBASE_TXID, MerkleTree.encodeTxid(hasher.getTxids(), MerkleTree.HASH_LEN));
+		assertEquals(COINBASE_TXID, MerkleTree.encodeTxid(hasher.getWtxids(), MerkleTree.HASH_LEN));
+	}
+
+	@Test
+	public void coinbaseWtxidIsZero() {
+		TransactionHasher hasher = new TransactionHasher(true);
+		hasher.hash(new byte[][] {segwit(), segwit()});
+		assertEquals(COINBASE_TXID, MerkleTree.encodeTxid(hasher.getTxids(), 0));
+		assertArrayEquals(new byte[MerkleTree.HASH_LEN], Arrays.copyOf(hasher.getWtxids(), MerkleTree.HASH_LEN));
+		assertEquals(SEGWIT_WTXID, MerkleTree.encodeTxid(hasher.getWtxids(), MerkleTree.HASH_LEN));
+	}
+
+	@Test
+	public void witnessCommitment() {
+		TransactionHasher hasher = new TransactionHasher(true);
+		hasher.hash(new byte[][] {coinbase(), segwit()});
+		assertEquals(WITNESS_ROOT, hasher.getWitnessMerkleRoot());
+		assertArrayEquals(RawBlockFileTest.hex(COMMITMENT), hasher.getWitnessCommitment(new byte[MerkleTree.HASH_LEN]));
+		assertEquals(new MerkleTree(new String[] {COINBASE_TXID, COINBASE_TXID}).getMerkleRoot(), hasher.getMerkleRoot());
+		assertThrows(IllegalArgumentException.class, () -> hasher.getWitnessCommitment(new byte[31]));
+	}
+
+	@Test
+	public void hashesTransactionsInABuffer() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0x55);                                             // a byte before the transactions
+		out.writeBytes(segwit());
+		out.writeBytes(coinbase());
+		byte[] bytes = out.toByteArray();
+		TransactionHasher hasher = new TransactionHasher(false);
+		assertEquals(bytes.length, hasher.hash(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), 1, 2));
+		assertEquals(COINBASE_TXID, MerkleTree.encodeTxid(hasher.getTxids(), 0));
+		assertEquals(COINBASE_TXID, MerkleTree.encodeTxid(hasher.getTxids(), MerkleTree.HASH_LEN));
+		assertThrows(IllegalStateException.class, () -> hasher.getWtxids());
+	}
+
+	@Test
+	public void refusesCutShortOrLeftOverBytes() {
+		TransactionHasher hasher = new TransactionHasher(true);
+		byte[] segwit = segwit();
+		assertThrows(IllegalArgumentException.class,
+		             () -> hasher.hash(new byte[][] {Arrays.copyOf(segwit, segwit.length - 5)}));
+		assertThrows(IllegalArgumentException.class,
+		             () -> hasher.hash(new byte[][] {Arrays.copyOf(segwit, segwit.length + 1)}));
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * @return the coinbase of the genesis block
+	 */
+	private static byte[] coinbase() {
+		byte[] genesis = RawBlockFileTest.genesis();
+		return Arrays.copyOfRange(genesis, RawBlock.HEADER_LEN + 1, genesis.length);
+	}
+
+	/**
+	 * @return the coinbase of the genesis block with a
+	 * segwit marker and flag and a witness of one 32 byte
+	 * item, its txid is unchanged
+	 */
+	private static byte[] segwit() {
+		byte[] tx = coinbase();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(tx, 0, 4);                                         // version
+		out.write(0);                                                // marker
+		out.write(1);                                                // flag
+		out.write(tx, 4, tx.length - 8);                             // inputs and outputs
+		out.write(1);                                                // one witness item
+		out.write(32);
+		out.writeBytes(new byte[32]);
+		out.write(tx, tx.length - 4, 4);                             // lock time
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,149 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests looking up transactions in a TxidIndex and the
+ * proofs it serves, including after a block is replaced
+ * and after the index is closed and opened again.
+ */
+public class TxidIndexTest {
+	private static final String BLOCK_HASH = "000000000003ba27aa200b1cecaad478d2b00432346c3f1f3986da1afd33e506";
+	private static final String ROOT = "f3e94742aca4b5ef85488dc37c06c3282295ffec960994b2c0d5ac2a25a95766";
+	private static final String[] TXIDS = {
+		"8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87",
+		"fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4",
+		"6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4",
+		"e9a66845e05d5abc0ad04ec80f774a7e585c6e8db975962d069a522137b80c1d"
+	};
+	private static final String A = "aa".repeat(32);
+	private static final String B = "bb".repeat(32);
+	private static final String C = "cc".repeat(32);
+	private static final String D = "dd".repeat(32);
+
+	private Path dir;
+
+	@BeforeEach
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("txids");
+	}
+
+	@AfterEach
+	public void deleteDir() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path path : files.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {   // files before their directory
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void findsATransactionAndProvesIt() throws IOException {
+		try (TxidIndex index = TxidIndex.create(dir, 100)) {
+			index.addBlock(block(TXIDS[2]));
+			assertEquals(4, index.size());
+			TxidIndex.Location at = index.lookup(TXIDS[3]);
+			assertEquals(100000, at.getHeight());
+			assertEquals(3, at.getIndex());
+			assertEquals(ROOT, index.getMerkleRoot(100000));
+			assertTrue(MerkleProof.verifyProof(TXIDS[3], index.getProof(at), ROOT));
+			assertTrue(MerkleProof.verifyProof(TXIDS[0], index.getProof(TXIDS[0]), ROOT));
+		}
+		try (TxidIndex index = TxidIndex.open(dir)) {                // everything is still there once opened again
+			assertEquals(4, index.size());
+			assertEquals(100000, index.getLowestHeight());
+			assertTrue(MerkleProof.verifyProof(TXIDS[1], index.getProof(TXIDS[1]), ROOT));
+		}
+	}
+
+	@Test
+	public void missesATransactionInNoBlock() throws IOException {
+		try (TxidIndex index = TxidIndex.create(dir, 100)) {
+			assertNull(index.lookup(A));
+			index.addBlock(5, new MerkleTree(new String[] {A, B}));
+			assertNull(index.lookup(C));
+			assertNull(index.getProof(C));
+			assertNull(index.lookup(A, 6, 10));                      // outside the heights asked about
+		}
+	}
+
+	@Test
+	public void forgetsTheTransactionsOfAReplacedBlock() throws IOException {
+		try (TxidIndex index = TxidIndex.create(dir, 100)) {
+			index.addBlock(5, new MerkleTree(new String[] {A, B, C}));
+			index.addBlock(5, new MerkleTree(new String[] {D, B}));
+			assertNull(index.lookup(A));
+			assertNull(index.lookup(C));
+			assertEquals(0, index.lookup(D).getIndex());
+			assertEquals(1, index.lookup(B).getIndex());             // moved from leaf 2 to leaf 1
+			assertTrue(MerkleProof.verifyProof(B, index.getProof(B), index.getMerkleRoot(5)));
+		}
+	}
+
+	@Test
+	public void findsATransactionInEachBlockHoldingIt() throws IOException {
+		try (TxidIndex index = TxidIndex.create(dir, 100)) {
+			index.addBlock(5, new MerkleTree(new String[] {A, B}));
+			index.addBlock(9, new MerkleTree(new String[] {C, A}));
+			assertEquals(5, index.lookup(A, 0, 5).getHeight());
+			assertEquals(9, index.lookup(A, 6, 10).getHeight());
+			assertEquals(1, index.lookup(A, 6, 10).getIndex());
+			assertEquals(5, index.getLowestHeight());
+			assertEquals(9, index.getHighestHeight());
+		}
+	}
+
+	@Test
+	public void refusesABlockThatDoesNotVerify() throws IOException {
+		try (TxidIndex index = TxidIndex.create(dir, 100)) {
+			assertThrows(IllegalArgumentException.class, () -> index.addBlock(block("00" + TXIDS[2].substring(2))));
+			assertEquals(0, index.size());
+			assertNull(index.lookup(TXIDS[0]));
+		}
+	}
+
+	@Test
+	public void refusesMoreTransactionsThanItsCapacity() throws IOException {
+		try (TxidIndex index = TxidIndex.create(dir, 2)) {
+			assertThrows(IllegalStateException.class, () -> index.addBlock(1, new MerkleTree(TXIDS)));
+		}
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * @return block 100000 with its third transaction ID
+	 * replaced by txid
+	 */
+	private static Block block(String txid) throws IOException {
+		String[] txids = TXIDS.clone();
+		txids[2] = txid;
+		StringBuilder page = new StringBuilder("<html><body>\n<h1>Block #100000</h1>\n<table>\n")
+				.append("<tr><th>Number Of Transactions</th>\n<td id=\"n_tx\">").append(txids.length).append("</td>\n")
+				.append("<tr><th>Merkle Root</th>\n<td>").append(ROOT).append("</td>\n</table>\n");
+		for (String id : txids) {
+			page.append("<tr><td><a class=\"hash-link\" href=\"/tx/").append(id).append("\">")
+			    .append(id).append("</a></td>\n");
+		}
+		page.append("</body></html>\n");
+		return new Block(new URL("https://blockchain.info/block/" + BLOCK_HASH),
+		                 new ByteArrayInputStream(page.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,110 @@
+package MerkleTreeVerify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests that VerificationCache only keeps blocks that
+ * verified, so a corrupted fetch of a block does not
+ * stick to the block until it ages out.
+ */
+public class VerificationCacheTest {
+	private static final String BLOCK_HASH = "000000000003ba27aa200b1cecaad478d2b00432346c3f1f3986da1afd33e506";
+	private static final String ROOT = "f3e94742aca4b5ef85488dc37c06c3282295ffec960994b2c0d5ac2a25a95766";
+	private static final String[] TXIDS = {
+		"8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87",
+		"fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4",
+		"6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4",
+		"e9a66845e05d5abc0ad04ec80f774a7e585c6e8db975962d069a522137b80c1d"
+	};
+	private static final String CORRUPT_TXID = "00" + TXIDS[2].substring(2);   // what a bad fetch gave instead of TXIDS[2]
+
+	@Test
+	public void refetchAfterMismatchVerifies() throws IOException {
+		VerificationCache cache = new VerificationCache(16, 60000, false);
+		Block corrupt = block(CORRUPT_TXID);
+		assertEquals(BLOCK_HASH, corrupt.getBlockHash());
+		assertEquals(VerificationResult.Status.MISMATCH, BlockVerify.verify(corrupt, cache).status());
+		assertEquals(0, cache.size());
+
+		Block good = block(TXIDS[2]);
+		assertEquals(VerificationResult.Status.MATCH, BlockVerify.verify(good, cache).status());
+		assertEquals(1, cache.size());
+		assertEquals(VerificationResult.Status.MATCH, BlockVerify.verify(good, cache).status());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void cachedMatchIsNotHashedAgain() throws IOException {
+		VerificationCache cache = new VerificationCache(16, 60000, true);
+		BlockVerify first = new BlockVerify(block(TXIDS[2]), cache);
+		assertTrue(first.verifyRoot());
+		VerificationCache.Entry entry = cache.get(BLOCK_HASH, 100000);
+		assertNotNull(entry);
+		assertTrue(entry.isVerified());
+		assertNotNull(cache.getProof(BLOCK_HASH, 100000, 3));
+		assertTrue(MerkleProof.verifyProof(TXIDS[3], cache.getProof(BLOCK_HASH, 100000, 3), ROOT));
+	}
+
+	@Test
+	public void mismatchIsNotPut() {
+		VerificationCache cache = new VerificationCache(16, 60000, false);
+		cache.put(BLOCK_HASH, 100000, "00" + ROOT.substring(2), ROOT, null);
+		cache.put(BLOCK_HASH, 100000, null, ROOT, null);
+		assertNull(cache.get(BLOCK_HASH, 100000));
+		cache.put(BLOCK_HASH, 100000, ROOT, ROOT, null);
+		assertNotNull(cache.get(BLOCK_HASH, 100000));
+	}
+
+	@Test
+	public void hugeMaxAgeKeepsEntries() {
+		VerificationCache cache = new VerificationCache(16, Long.MAX_VALUE / 1000, false);
+		cache.put(BLOCK_HASH, 100000, ROOT, ROOT, null);
+		cache.evictExpired();
+		assertNotNull(cache.get(BLOCK_HASH, 100000));
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		VerificationCache cache = new VerificationCache(2, 60000, false);
+		cache.put("aa".repeat(32), 1, ROOT, ROOT, null);
+		cache.put("bb".repeat(32), 2, ROOT, ROOT, null);
+		assertNotNull(cache.get("aa".repeat(32), 1));          // now bb is the least recently used
+		cache.put("cc".repeat(32), 3, ROOT, ROOT, null);
+		assertNull(cache.get("bb".repeat(32), 2));
+		assertNotNull(cache.get("aa".repeat(32), 1));
+		assertEquals(1, cache.getEvictions());
+	}
+
+
+	//------------------------Private Methods--------------------------------//
+
+	/**
+	 * @return block 100000 with its third transaction ID
+	 * replaced by txid
+	 */
+	private static Block block(String txid) throws IOException {
+		String[] txids = TXIDS.clone();
+		txids[2] = txid;
+		StringBuilder page = new StringBuilder("<html><body>\n<h1>Block #100000</h1>\n<table>\n")
+				.append("<tr><th>Number Of Transactions</th>\n<td id=\"n_tx\">").append(txids.length).append("</td>\n")
+				.append("<tr><th>Merkle Root</th>\n<td>").append(ROOT).append("</td>\n</table>\n");
+		for (String id : txids) {
+			page.append("<tr><td><a class=\"hash-link\" href=\"/tx/").append(id).append("\">")
+			    .append(id).append("</a></td>\n");
+		}
+		page.append("</body></html>\n");
+		return new Block(new URL("https://blockchain.info/block/" + BLOCK_HASH),
+		                 new ByteArrayInputStream(page.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+}